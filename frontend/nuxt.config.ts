@@ -19,6 +19,10 @@ export default defineNuxtConfig({
       ]
     }
   },
+  nitro: {
+    // Generate gzip and brotli variants of public assets, served by the backend.
+    compressPublicAssets: { gzip: true, brotli: true }
+  },
   runtimeConfig: {
     public: {
       // @ts-ignore
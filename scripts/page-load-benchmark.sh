@@ -0,0 +1,70 @@
+#!/usr/bin/env bash
+#
+# Measures the bytes transferred and the time spent loading the home page and
+# the assets it references, the way a browser does on first and repeat visits.
+#
+# Usage: scripts/page-load-benchmark.sh [-n runs] [base-url]
+#
+# The application must be running, with the frontend built in:
+#   ./mvnw package && java -jar target/temporal-story-0.0.1-SNAPSHOT.jar
+
+set -euo pipefail
+
+RUNS=10
+while getopts "n:" opt; do
+  case $opt in
+    n) RUNS=$OPTARG ;;
+    *) echo "Usage: $0 [-n runs] [base-url]" >&2; exit 1 ;;
+  esac
+done
+shift $((OPTIND - 1))
+BASE_URL=${1:-http://localhost:8080}
+
+# Assets referenced by the page: Nuxt puts all of them under /_nuxt/.
+ASSETS=$(curl -fs "$BASE_URL/" | grep -o '/_nuxt/[^"]*' | sort -u)
+
+# Prints "<bytes> <seconds>" for a request.
+fetch() {
+  curl -fs -o /dev/null -w '%{size_download} %{time_total}\n' "$@"
+}
+
+# Loads the page and its assets, and prints "<bytes> <milliseconds>".
+page_load() {
+  local encoding=$1
+  local etag=${2:-}
+  {
+    if [ -n "$etag" ]; then
+      # Repeat visit: the page is revalidated, assets are served from the browser cache.
+      fetch -H "Accept-Encoding: $encoding" -H "If-None-Match: $etag" "$BASE_URL/"
+    else
+      fetch -H "Accept-Encoding: $encoding" "$BASE_URL/"
+      for asset in $ASSETS; do
+        fetch -H "Accept-Encoding: $encoding" "$BASE_URL$asset"
+      done
+    fi
+  } | awk '{ bytes += $1; time += $2 } END { printf "%d %d\n", bytes, time * 1000 }'
+}
+
+report() {
+  local label=$1
+  shift
+  local total_bytes=0
+  local timings=()
+  for _ in $(seq "$RUNS"); do
+    read -r bytes millis < <(page_load "$@")
+    total_bytes=$bytes
+    timings+=("$millis")
+  done
+  local sorted=($(printf "%s\n" "${timings[@]}" | sort -n))
+  printf "%-28s %10s %8sms %8sms\n" "$label" "$total_bytes" \
+    "${sorted[$(( ${#sorted[@]} / 2 ))]}" "${sorted[$(( ${#sorted[@]} * 95 / 100 ))]}"
+}
+
+ETAG=$(curl -fsI "$BASE_URL/" | awk 'tolower($1) == "etag:" { print $2 }' | tr -d '\r')
+
+echo "Page load of $BASE_URL/ ($(echo "$ASSETS" | wc -w) assets, $RUNS runs)"
+printf "%-28s %10s %10s %10s\n" "SCENARIO" "BYTES" "MEDIAN" "P95"
+report "first visit (identity)" identity
+report "first visit (gzip)" gzip
+report "first visit (br)" "br, gzip"
+report "repeat visit" "br, gzip" "$ETAG"
@@ -0,0 +1,71 @@
+#!/usr/bin/env bash
+#
+# Measures how long the application takes to become ready, as seen by the
+# readiness probe (/readyz) Kubernetes uses to route traffic to new pods.
+#
+# Usage: scripts/startup-benchmark.sh [-n runs] image [image...]
+#
+# Compare an image built with and without the AOT cache:
+#   ./mvnw spring-boot:build-image -Dspring-boot.build-image.imageName=temporal-story:default
+#   ./mvnw -Paot-cache spring-boot:build-image -Dspring-boot.build-image.imageName=temporal-story:aot-cache
+#   scripts/startup-benchmark.sh temporal-story:default temporal-story:aot-cache
+#
+# Temporal and Redis must be running (docker compose up -d).
+
+set -euo pipefail
+
+RUNS=5
+PORT=${PORT:-18080}
+TIMEOUT_SECONDS=${TIMEOUT_SECONDS:-120}
+
+while getopts "n:" opt; do
+  case $opt in
+    n) RUNS=$OPTARG ;;
+    *) echo "Usage: $0 [-n runs] image [image...]" >&2; exit 1 ;;
+  esac
+done
+shift $((OPTIND - 1))
+if [ $# -eq 0 ]; then
+  echo "Usage: $0 [-n runs] image [image...]" >&2
+  exit 1
+fi
+
+now_millis() {
+  date +%s%3N
+}
+
+# Starts a container and prints the number of milliseconds until it is ready.
+time_to_ready() {
+  local image=$1
+  local container
+  local start
+  start=$(now_millis)
+  container=$(docker run -d --rm --network host \
+    -e PORT="$PORT" \
+    -e MANAGEMENT_SERVER_PORT=$((PORT + 1)) \
+    -e SPRING_TEMPORAL_CONNECTION_TARGET=localhost:7233 \
+    -e SPRING_DATA_REDIS_HOST=localhost \
+    -e SPRING_AI_OPENAI_API_KEY="${SPRING_AI_OPENAI_API_KEY:-benchmark}" \
+    "$image")
+  trap 'docker rm -f "$container" > /dev/null 2>&1 || true' RETURN
+
+  until curl -fs -o /dev/null "http://localhost:$PORT/readyz"; do
+    if [ $(( $(now_millis) - start )) -gt $((TIMEOUT_SECONDS * 1000)) ]; then
+      echo "Timed out waiting for $image to become ready" >&2
+      return 1
+    fi
+    sleep 0.05
+  done
+  echo $(( $(now_millis) - start ))
+}
+
+printf "%-50s %8s %8s %8s\n" "IMAGE" "MIN" "MEDIAN" "MAX"
+for image in "$@"; do
+  timings=()
+  for _ in $(seq "$RUNS"); do
+    timings+=("$(time_to_ready "$image")")
+  done
+  sorted=($(printf "%s\n" "${timings[@]}" | sort -n))
+  printf "%-50s %6sms %6sms %6sms\n" "$image" \
+    "${sorted[0]}" "${sorted[$(( ${#sorted[@]} / 2 ))]}" "${sorted[-1]}"
+done
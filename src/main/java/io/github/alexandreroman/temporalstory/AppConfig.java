@@ -17,14 +17,146 @@
 package io.github.alexandreroman.temporalstory;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
 
 @ConfigurationProperties(prefix = "app")
 public record AppConfig(
-        Story story
+        Story story,
+        Admission admission,
+        Quota quota,
+        Latencies latencies,
+        Routing routing,
+        Pool pool,
+        Export export
 ) {
-    public record Story(Cover cover) {
+    /**
+     * @param cover           size of the generated covers
+     * @param maxChapters     maximum number of chapters of a long story
+     * @param maxTranslations maximum number of languages a story is translated to
+     * @param maxWait         maximum time a request creating a story may wait for it
+     */
+    public record Story(Cover cover, @DefaultValue("10") int maxChapters, @DefaultValue("5") int maxTranslations,
+                        @DefaultValue("60s") Duration maxWait) {
     }
 
     public record Cover(int width, int height) {
     }
+
+    /**
+     * Admission control settings for new story requests.
+     *
+     * @param enabled           whether admission control is enforced
+     * @param maxBacklog        maximum number of tasks waiting in the story task queue
+     * @param maxInFlight       maximum number of running story workflows
+     * @param refreshInterval   how long a load snapshot is reused before querying Temporal again
+     * @param retryAfter        default delay suggested to rejected clients when no better estimate exists
+     * @param maxRetryAfter     upper bound for the delay suggested to rejected clients
+     * @param priorityApiKeys   API keys of tenants allowed to use the priority lane, which get
+     *                          their own quota instead of the one of their IP address
+     * @param priorityHeadroom  factor applied to limits for the priority lane
+     */
+    public record Admission(
+            boolean enabled,
+            int maxBacklog,
+            int maxInFlight,
+            Duration refreshInterval,
+            Duration retryAfter,
+            Duration maxRetryAfter,
+            @DefaultValue Set<String> priorityApiKeys,
+            double priorityHeadroom
+    ) {
+    }
+
+    /**
+     * Per-client quota settings for story creation.
+     *
+     * @param enabled         whether quotas are enforced
+     * @param capacity        maximum number of stories a client can create in a burst
+     * @param refillPerMinute number of stories a client is granted every minute
+     * @param localHeadroom   fraction of the capacity a client must have left to be
+     *                        admitted without checking Redis
+     * @param localSyncPeriod maximum time between two Redis checks for a client
+     * @param localMaxClients maximum number of clients tracked in memory
+     */
+    public record Quota(
+            boolean enabled,
+            int capacity,
+            double refillPerMinute,
+            double localHeadroom,
+            Duration localSyncPeriod,
+            int localMaxClients
+    ) {
+    }
+
+    /**
+     * Settings for the step latency histograms used to estimate remaining time.
+     *
+     * @param refreshInterval how often histograms are published to and merged from Redis
+     * @param window          how long latencies are remembered
+     */
+    public record Latencies(
+            Duration refreshInterval,
+            Duration window
+    ) {
+    }
+
+    /**
+     * Settings for routing AI model calls across several models.
+     *
+     * @param chatModels       chat models to use, in order of preference
+     * @param imageModels      image models to use, in order of preference
+     * @param window           how long latencies and errors are remembered for each model
+     * @param minSamples       number of calls required before using the statistics of a model
+     * @param maxErrorRate     error rate above which a model is only used as a last resort
+     * @param latencyTolerance how much slower than the fastest model the preferred model may be
+     *                         before calls are routed to the fastest one
+     * @param maxHedgeRatio    maximum fraction of calls which may fire a hedged request
+     */
+    public record Routing(
+            @DefaultValue List<String> chatModels,
+            @DefaultValue List<String> imageModels,
+            Duration window,
+            int minSamples,
+            double maxErrorRate,
+            double latencyTolerance,
+            double maxHedgeRatio
+    ) {
+    }
+
+    /**
+     * Settings for the pool of pre-generated stories.
+     *
+     * @param enabled        whether pooled stories are generated and handed out
+     * @param size           number of stories to keep ready for each popular pair
+     * @param popularPairs   number of (fear, language) pairs to keep stories for
+     * @param minRequests    decayed request count a pair needs to be pooled
+     * @param maxRefill      maximum number of stories generated by a refill
+     * @param maxAge         how long a pooled story can be handed out, which must be
+     *                       shorter than the lifetime of cover URLs
+     * @param refillInterval how often the pool is refilled
+     * @param offPeakLoad    fraction of the admission limits under which the pool is refilled
+     */
+    public record Pool(
+            boolean enabled,
+            int size,
+            int popularPairs,
+            double minRequests,
+            int maxRefill,
+            Duration maxAge,
+            Duration refillInterval,
+            double offPeakLoad
+    ) {
+    }
+
+    /**
+     * Settings for the export of all stories.
+     *
+     * @param apiKeys API keys allowed to export stories: exports are disabled if none is set
+     */
+    public record Export(@DefaultValue Set<String> apiKeys) {
+    }
 }
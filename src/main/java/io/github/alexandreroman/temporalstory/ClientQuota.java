@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Enforces per-client quotas on story creation.
+ * <p>
+ * Quotas are token buckets stored in Redis and updated atomically by a Lua script,
+ * so that they hold across all nodes. Each node also remembers how many tokens a
+ * client had left the last time Redis was checked: clients which are clearly under
+ * their limit are admitted without any Redis call, and the tokens they consume
+ * meanwhile are debited on the next check. Checking a quota never takes more than
+ * one Redis round trip.
+ */
+@Component
+@Profile("!worker")
+class ClientQuota {
+    private static final int STRIPES = 16;
+    static final RedisScript<List<Long>> SCRIPT = tokenBucketScript();
+
+    private final Logger logger = LoggerFactory.getLogger(ClientQuota.class);
+    private final StringRedisTemplate redis;
+    private final AppConfig.Quota config;
+    private final Set<String> apiKeys;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    ClientQuota(StringRedisTemplate redis, AppConfig config) {
+        this.redis = redis;
+        this.config = config.quota();
+        this.apiKeys = config.admission().priorityApiKeys();
+        if (this.config.enabled() && this.config.refillPerMinute() <= 0) {
+            // The token bucket script would fail on every call, and quotas would never be enforced.
+            throw new IllegalArgumentException("app.quota.refill-per-minute must be positive");
+        }
+        for (int i = 0; i < STRIPES; ++i) {
+            stripes[i] = new Stripe(Math.max(1, this.config.localMaxClients() / STRIPES));
+        }
+    }
+
+    /**
+     * Builds a client identifier from a request: the API key if it is a configured one,
+     * the client IP address otherwise.
+     */
+    String clientId(String apiKey, String remoteAddr) {
+        // Any caller can make up API keys: unknown keys would each get a fresh quota.
+        if (apiKey != null && apiKeys.contains(apiKey)) {
+            // Don't store API keys in Redis.
+            return "key:" + DigestUtils.md5DigestAsHex(apiKey.getBytes(StandardCharsets.UTF_8));
+        }
+        return "ip:" + remoteAddr;
+    }
+
+    /**
+     * Consumes one story from the quota of a client.
+     *
+     * @param clientId the client identifier (see {@link #clientId(String, String)})
+     * @return <code>true</code> if a story was charged to the client, <code>false</code>
+     *         if it was admitted without checking its quota
+     * @throws TooManyRequestsException if the client has exhausted its quota
+     */
+    boolean acquire(String clientId) {
+        if (!config.enabled()) {
+            return false;
+        }
+        final var stripe = stripes[Math.floorMod(clientId.hashCode(), STRIPES)];
+        final int debt;
+        synchronized (stripe) {
+            final var local = stripe.get(clientId);
+            if (local != null && local.tryConsume(localThreshold(), config.localSyncPeriod())) {
+                return true;
+            }
+            debt = local == null ? 0 : local.drainDebt();
+        }
+
+        final var result = checkRedis(clientId, debt);
+        if (result == null) {
+            // Redis is not available: don't block story creation because of quotas.
+            return false;
+        }
+        synchronized (stripe) {
+            final var bucket = new LocalBucket(result.tokens(), System.nanoTime());
+            final var previous = stripe.get(clientId);
+            if (previous != null) {
+                // Tokens consumed locally while Redis was checked are debited on the next check.
+                bucket.consumed = previous.drainDebt();
+            }
+            stripe.put(clientId, bucket);
+        }
+        if (!result.allowed()) {
+            logger.info("Client {} exceeded its story quota: retryAfter={}", clientId, result.retryAfter());
+            throw new TooManyRequestsException("Story quota exceeded, please retry later", result.retryAfter());
+        }
+        return true;
+    }
+
+    /**
+     * Gives back a story charged by {@link #acquire(String)}, when the request
+     * was rejected afterwards. The token is credited on the next Redis check.
+     */
+    void refund(String clientId) {
+        final var stripe = stripes[Math.floorMod(clientId.hashCode(), STRIPES)];
+        synchronized (stripe) {
+            final var local = stripe.get(clientId);
+            if (local != null) {
+                local.consumed -= 1;
+            }
+        }
+    }
+
+    private double localThreshold() {
+        return config.capacity() * config.localHeadroom();
+    }
+
+    private BucketState checkRedis(String clientId, int debt) {
+        try {
+            final var resp = redis.execute(SCRIPT, List.of(getKey(clientId)),
+                    String.valueOf(config.capacity()),
+                    String.valueOf(config.refillPerMinute() / 60),
+                    String.valueOf(debt));
+            if (resp == null || resp.size() != 3) {
+                logger.warn("Unexpected token bucket response for client {}: {}", clientId, resp);
+                return null;
+            }
+            return new BucketState(resp.get(0) == 1, resp.get(1), Duration.ofMillis(resp.get(2)));
+        } catch (RuntimeException e) {
+            logger.warn("Unable to check story quota for client {}", clientId, e);
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RedisScript<List<Long>> tokenBucketScript() {
+        // Redis returns Lua tables as lists of integers.
+        return (RedisScript<List<Long>>) (RedisScript<?>) RedisScript.of(
+                new ClassPathResource("scripts/token-bucket.lua"), List.class);
+    }
+
+    private String getKey(String clientId) {
+        return String.format("temporal-story:quotas:%s", clientId);
+    }
+
+    private record BucketState(boolean allowed, long tokens, Duration retryAfter) {
+    }
+
+    /**
+     * What a node knows about the quota of a client since the last Redis check.
+     * Instances are guarded by the lock of their stripe.
+     */
+    private static final class LocalBucket {
+        private final long tokensAtSync;
+        private final long syncedAt;
+        private int consumed;
+
+        LocalBucket(long tokensAtSync, long syncedAt) {
+            this.tokensAtSync = tokensAtSync;
+            this.syncedAt = syncedAt;
+        }
+
+        /**
+         * Consumes a token locally if the client stays above the threshold and
+         * the last Redis check is recent enough.
+         */
+        boolean tryConsume(double threshold, Duration syncPeriod) {
+            if (System.nanoTime() - syncedAt > syncPeriod.toNanos()) {
+                return false;
+            }
+            if (tokensAtSync - consumed - 1 < threshold) {
+                return false;
+            }
+            consumed += 1;
+            return true;
+        }
+
+        /**
+         * @return the tokens consumed locally since the last Redis check, negative if tokens were refunded
+         */
+        int drainDebt() {
+            final var debt = consumed;
+            consumed = 0;
+            return debt;
+        }
+    }
+
+    /**
+     * A bounded, least-recently-used set of local buckets. Spreading clients over
+     * several stripes keeps lock contention low under concurrent requests.
+     */
+    private static final class Stripe extends LinkedHashMap<String, LocalBucket> {
+        private static final long serialVersionUID = 1L;
+        private final int maxEntries;
+
+        Stripe(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LocalBucket> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
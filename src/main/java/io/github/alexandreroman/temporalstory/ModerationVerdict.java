@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory;
+
+import java.util.List;
+
+/**
+ * The result of the content-safety moderation of a story.
+ *
+ * @param approved   whether the story can be shown to children
+ * @param categories the categories the story was flagged for, empty if approved
+ */
+public record ModerationVerdict(boolean approved, List<String> categories) {
+    public ModerationVerdict {
+        categories = categories == null ? List.of() : List.copyOf(categories);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory;
+
+import io.opentelemetry.api.trace.Tracer;
+import io.temporal.activity.ActivityExecutionContext;
+import io.temporal.common.interceptors.*;
+import io.temporal.workflow.Workflow;
+import io.temporal.workflow.unsafe.WorkflowUnsafe;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long workflows and activities waited in Temporal task queues
+ * before a worker picked them up, as dedicated spans.
+ * <p>
+ * This interceptor must run inside the Temporal tracing interceptor, so that
+ * queue wait spans are children of the <code>RunWorkflow</code> and
+ * <code>RunActivity</code> spans.
+ */
+class QueueWaitTracingInterceptor extends WorkerInterceptorBase {
+    private final Tracer tracer;
+
+    QueueWaitTracingInterceptor(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    public WorkflowInboundCallsInterceptor interceptWorkflow(WorkflowInboundCallsInterceptor next) {
+        return new WorkflowInboundCallsInterceptorBase(next) {
+            @Override
+            public WorkflowOutput execute(WorkflowInput input) {
+                // Workflow code is replayed when a worker recovers a workflow:
+                // the wait was already recorded the first time.
+                if (!WorkflowUnsafe.isReplaying()) {
+                    final var info = Workflow.getInfo();
+                    tracer.spanBuilder("WorkflowQueueWait:" + info.getWorkflowType())
+                            .setStartTimestamp(info.getRunStartedTimestampMillis(), TimeUnit.MILLISECONDS)
+                            .setAttribute("temporal.task_queue", info.getTaskQueue())
+                            .startSpan()
+                            .end();
+                }
+                return super.execute(input);
+            }
+        };
+    }
+
+    @Override
+    public ActivityInboundCallsInterceptor interceptActivity(ActivityInboundCallsInterceptor next) {
+        return new ActivityInboundCallsInterceptorBase(next) {
+            private ActivityExecutionContext ctx;
+
+            @Override
+            public void init(ActivityExecutionContext context) {
+                this.ctx = context;
+                super.init(context);
+            }
+
+            @Override
+            public ActivityOutput execute(ActivityInput input) {
+                final var info = ctx.getInfo();
+                tracer.spanBuilder("ActivityQueueWait:" + info.getActivityType())
+                        .setStartTimestamp(info.getCurrentAttemptScheduledTimestamp(), TimeUnit.MILLISECONDS)
+                        .setAttribute("temporal.task_queue", info.getActivityTaskQueue())
+                        .setAttribute("temporal.attempt", info.getAttempt())
+                        .startSpan()
+                        .end(info.getStartedTimestamp(), TimeUnit.MILLISECONDS);
+                return super.execute(input);
+            }
+        };
+    }
+}
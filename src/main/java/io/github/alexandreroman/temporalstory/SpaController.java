@@ -16,13 +16,133 @@
 
 package io.github.alexandreroman.temporalstory;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves the single page application for all frontend routes.
+ * <p>
+ * The page is loaded once and kept in memory, along with the gzip and brotli
+ * variants generated by the frontend build: SPA routes are served without
+ * going through the resource handlers again, and without compressing at runtime.
+ */
 @Controller
+@Profile("!worker")
 public class SpaController {
+    // Precompressed variants, by order of preference.
+    private static final List<Map.Entry<String, String>> ENCODINGS = List.of(
+            Map.entry("br", ".br"),
+            Map.entry("gzip", ".gz"));
+    private final Resource indexHtml;
+    private volatile Page page;
+
+    @Autowired
+    SpaController(ResourceLoader resourceLoader) {
+        this(resourceLoader.getResource("classpath:/static/index.html"));
+    }
+
+    SpaController(Resource indexHtml) {
+        this.indexHtml = indexHtml;
+    }
+
     @GetMapping(value = { "/", "/{path:[^\\.]*}", "/**/{path:[^\\.]*}" })
-    public String forward() {
-        return "forward:/index.html";
+    public ResponseEntity<byte[]> forward(@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                          WebRequest request) {
+        final var page = getPage();
+        if (page == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (request.checkNotModified(page.etag())) {
+            return null;
+        }
+
+        var encoding = "identity";
+        var body = page.variants().get(encoding);
+        for (final var variant : page.variants().entrySet()) {
+            if (accepts(acceptEncoding, variant.getKey())) {
+                encoding = variant.getKey();
+                body = variant.getValue();
+                break;
+            }
+        }
+        final var resp = ResponseEntity.ok()
+                .contentType(MediaType.TEXT_HTML)
+                // The page must be revalidated, so that new deployments are picked up right away.
+                .cacheControl(CacheControl.noCache())
+                .eTag(page.etag())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (!"identity".equals(encoding)) {
+            resp.header(HttpHeaders.CONTENT_ENCODING, encoding);
+        }
+        return resp.body(body);
+    }
+
+    private Page getPage() {
+        var current = page;
+        if (current == null && indexHtml.exists()) {
+            // Loading the page twice under contention is harmless.
+            current = Page.load(indexHtml);
+            page = current;
+        }
+        return current;
+    }
+
+    static boolean accepts(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (final var part : acceptEncoding.split(",")) {
+            final var params = part.trim().split(";");
+            if (params[0].trim().equalsIgnoreCase(encoding)) {
+                for (int i = 1; i < params.length; ++i) {
+                    final var param = params[i].trim();
+                    if (param.matches("q=0(\\.0*)?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param variants the content of the page for each encoding, by order of preference
+     * @param etag     the entity tag of the page, weak since it is shared by all variants
+     */
+    private record Page(Map<String, byte[]> variants, String etag) {
+        static Page load(Resource resource) {
+            try {
+                final var variants = new LinkedHashMap<String, byte[]>();
+                for (final var encoding : ENCODINGS) {
+                    final var variant = resource.createRelative(resource.getFilename() + encoding.getValue());
+                    if (variant.exists()) {
+                        variants.put(encoding.getKey(), variant.getContentAsByteArray());
+                    }
+                }
+                final var content = resource.getContentAsByteArray();
+                variants.put("identity", content);
+                return new Page(variants, "W/\"" + DigestUtils.md5DigestAsHex(content) + "\"");
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to load page: " + resource, e);
+            }
+        }
     }
 }
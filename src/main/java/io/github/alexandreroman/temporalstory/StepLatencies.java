@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+
+/**
+ * Keeps track of how long each step of the story workflow takes, in order to
+ * estimate the remaining time of running workflows.
+ * <p>
+ * Latencies are recorded in HDR histograms: each node periodically publishes
+ * its own histograms to Redis, and nodes serving the API merge the histograms
+ * of all nodes into per-step estimates. Estimating the remaining time only reads
+ * precomputed values, which makes it cheap enough to run on every status read.
+ * <p>
+ * Long stories go through other steps than short stories, and take longer
+ * in the steps they share: their latencies are kept apart.
+ */
+@Component
+public class StepLatencies {
+    /**
+     * Steps only some workflows go through: translations usually end before the cover.
+     */
+    static final List<StoryWorkflowState> OPTIONAL_STEPS = List.of(StoryWorkflowState.TRANSLATING);
+    private static final long MAX_LATENCY_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private static final int MIN_SAMPLES = 5;
+    private static final String KEY_PREFIX = "temporal-story:latencies:";
+
+    private final Logger logger = LoggerFactory.getLogger(StepLatencies.class);
+    private final StringRedisTemplate redis;
+    private final AppConfig.Latencies config;
+    // Workers only record latencies: estimates are read by the API.
+    private final boolean estimating;
+    private final String nodeKey = KEY_PREFIX + UUID.randomUUID();
+    // Arrays below are indexed by pipeline ordinal, then by state ordinal.
+    private final Recorder[][] recorders = new Recorder[Pipeline.values().length][StoryWorkflowState.values().length];
+    // Histograms below are only accessed by the scheduler thread.
+    private final Histogram[][] currentWindow = new Histogram[recorders.length][StoryWorkflowState.values().length];
+    private final Histogram[][] previousWindow = new Histogram[recorders.length][StoryWorkflowState.values().length];
+    private long currentWindowStartedAt = System.nanoTime();
+    private volatile Map<Pipeline, Estimates> estimates = estimatesFrom(
+            new Histogram[recorders.length][StoryWorkflowState.values().length]);
+
+    StepLatencies(StringRedisTemplate redis, AppConfig config, Environment env) {
+        this.redis = redis;
+        this.config = config.latencies();
+        this.estimating = env.acceptsProfiles(Profiles.of("!worker"));
+        for (int i = 0; i < recorders.length; ++i) {
+            for (int j = 0; j < recorders[i].length; ++j) {
+                recorders[i][j] = new Recorder(SIGNIFICANT_DIGITS);
+                currentWindow[i][j] = new Histogram(SIGNIFICANT_DIGITS);
+                previousWindow[i][j] = new Histogram(SIGNIFICANT_DIGITS);
+            }
+        }
+    }
+
+    /**
+     * Records the time spent in each step of a completed workflow.
+     *
+     * @param transitions the state changes of the workflow, in order
+     */
+    public void record(List<StoryWorkflow.Transition> transitions) {
+        final var pipelineRecorders = recorders[Pipeline.of(transitions).ordinal()];
+        for (int i = 0; i < transitions.size() - 1; ++i) {
+            final var step = transitions.get(i);
+            final var latency = transitions.get(i + 1).timestamp() - step.timestamp();
+            if (latency >= 0) {
+                pipelineRecorders[step.state().ordinal()].recordValue(Math.min(latency, MAX_LATENCY_MILLIS));
+            }
+        }
+    }
+
+    /**
+     * Estimates the time left before a workflow completes.
+     *
+     * @param transitions       the state changes of the workflow so far, in order
+     * @param stepElapsedMillis the time spent so far in the current state
+     * @return the estimated remaining time in milliseconds, or <code>-1</code> if unknown
+     */
+    public long estimateRemainingMillis(List<StoryWorkflow.Transition> transitions, long stepElapsedMillis) {
+        if (transitions.isEmpty()) {
+            return -1;
+        }
+        return estimates.get(Pipeline.of(transitions))
+                .remainingMillis(transitions.getLast().state(), stepElapsedMillis);
+    }
+
+    @Scheduled(fixedDelayString = "${app.latencies.refresh-interval}")
+    void refresh() {
+        try {
+            publish();
+            if (estimating) {
+                merge();
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Unable to refresh step latencies", e);
+        }
+    }
+
+    private void publish() {
+        if (System.nanoTime() - currentWindowStartedAt > config.window().toNanos() / 2) {
+            // Histograms cover between half a window and a full window of data.
+            for (int i = 0; i < recorders.length; ++i) {
+                for (int j = 0; j < recorders[i].length; ++j) {
+                    previousWindow[i][j].reset();
+                    previousWindow[i][j].add(currentWindow[i][j]);
+                    currentWindow[i][j].reset();
+                }
+            }
+            currentWindowStartedAt = System.nanoTime();
+        }
+
+        final var values = new HashMap<String, String>();
+        for (final var pipeline : Pipeline.values()) {
+            final var p = pipeline.ordinal();
+            for (final var step : pipeline.steps()) {
+                final var i = step.ordinal();
+                currentWindow[p][i].add(recorders[p][i].getIntervalHistogram());
+                final var histogram = currentWindow[p][i].copy();
+                histogram.add(previousWindow[p][i]);
+                if (histogram.getTotalCount() > 0) {
+                    values.put(pipeline.fieldPrefix() + step.name(), encode(histogram));
+                }
+            }
+        }
+        if (!values.isEmpty()) {
+            redis.opsForHash().putAll(nodeKey, values);
+            redis.expire(nodeKey, config.window());
+        }
+    }
+
+    private void merge() {
+        final var merged = new Histogram[recorders.length][StoryWorkflowState.values().length];
+        final var scanOptions = ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(100).build();
+        try (final var keys = redis.scan(scanOptions)) {
+            while (keys.hasNext()) {
+                for (final var entry : redis.opsForHash().entries(keys.next()).entrySet()) {
+                    final var field = (String) entry.getKey();
+                    final var pipeline = field.startsWith(Pipeline.LONG.fieldPrefix()) ? Pipeline.LONG : Pipeline.SHORT;
+                    final var i = StoryWorkflowState.valueOf(field.substring(pipeline.fieldPrefix().length())).ordinal();
+                    final var histogram = decode((String) entry.getValue());
+                    final var pipelineHistograms = merged[pipeline.ordinal()];
+                    if (pipelineHistograms[i] == null) {
+                        pipelineHistograms[i] = new Histogram(SIGNIFICANT_DIGITS);
+                    }
+                    pipelineHistograms[i].add(histogram);
+                }
+            }
+        }
+        estimates = estimatesFrom(merged);
+        logger.debug("Step latency estimates updated: {}", estimates.values());
+    }
+
+    private static Map<Pipeline, Estimates> estimatesFrom(Histogram[][] histograms) {
+        final var estimates = new EnumMap<Pipeline, Estimates>(Pipeline.class);
+        for (final var pipeline : Pipeline.values()) {
+            estimates.put(pipeline, Estimates.from(pipeline, histograms[pipeline.ordinal()]));
+        }
+        return estimates;
+    }
+
+    private static String encode(Histogram histogram) {
+        final var buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        final var length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        return Base64.getEncoder().encodeToString(Arrays.copyOf(buffer.array(), length));
+    }
+
+    private static Histogram decode(String value) {
+        try {
+            return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(Base64.getDecoder().decode(value)), 0);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Invalid latency histogram", e);
+        }
+    }
+
+    /**
+     * Steps of the workflow, in execution order, depending on the length of the story.
+     */
+    enum Pipeline {
+        SHORT("", List.of(
+                StoryWorkflowState.INITIALIZING,
+                StoryWorkflowState.GENERATING_STORY,
+                StoryWorkflowState.PREPARING_COVER,
+                StoryWorkflowState.GENERATING_COVER,
+                StoryWorkflowState.TRANSLATING,
+                StoryWorkflowState.SAVING_RESULTS)),
+        LONG("long:", List.of(
+                StoryWorkflowState.INITIALIZING,
+                StoryWorkflowState.GENERATING_OUTLINE,
+                StoryWorkflowState.GENERATING_CHAPTERS,
+                StoryWorkflowState.PREPARING_COVER,
+                StoryWorkflowState.GENERATING_COVER,
+                StoryWorkflowState.TRANSLATING,
+                StoryWorkflowState.SAVING_RESULTS));
+
+        // Prefix of the Redis hash fields holding the histograms of the pipeline.
+        private final String fieldPrefix;
+        private final List<StoryWorkflowState> steps;
+
+        Pipeline(String fieldPrefix, List<StoryWorkflowState> steps) {
+            this.fieldPrefix = fieldPrefix;
+            this.steps = steps;
+        }
+
+        String fieldPrefix() {
+            return fieldPrefix;
+        }
+
+        List<StoryWorkflowState> steps() {
+            return steps;
+        }
+
+        /**
+         * @param transitions the state changes of a workflow, in order
+         * @return the pipeline the workflow goes through: long stories start with an outline
+         */
+        static Pipeline of(List<StoryWorkflow.Transition> transitions) {
+            return transitions.stream().anyMatch(t -> t.state() == StoryWorkflowState.GENERATING_OUTLINE)
+                    ? LONG : SHORT;
+        }
+    }
+
+    /**
+     * Precomputed per-step estimates of a pipeline, indexed by state ordinal.
+     *
+     * @param expectedMillis median latency of each step, <code>-1</code> if unknown
+     * @param followingMillis total expected latency of the steps after each step, <code>-1</code> if unknown
+     */
+    record Estimates(Pipeline pipeline, long[] expectedMillis, long[] followingMillis) {
+        static Estimates from(Pipeline pipeline, Histogram[] histograms) {
+            final var expected = new long[histograms.length];
+            final var following = new long[histograms.length];
+            Arrays.fill(expected, -1);
+            Arrays.fill(following, -1);
+            final var steps = pipeline.steps();
+            for (final var step : steps) {
+                final var histogram = histograms[step.ordinal()];
+                if (histogram != null && histogram.getTotalCount() >= MIN_SAMPLES) {
+                    expected[step.ordinal()] = histogram.getValueAtPercentile(50);
+                }
+            }
+            // All workflows saving their results went through the previous steps.
+            final var runs = histograms[StoryWorkflowState.SAVING_RESULTS.ordinal()];
+            long total = 0;
+            for (int i = steps.size() - 1; i >= 0; --i) {
+                final var step = steps.get(i);
+                following[step.ordinal()] = total;
+                if (total < 0) {
+                    continue;
+                }
+                if (OPTIONAL_STEPS.contains(step)) {
+                    // An optional step only counts as much as workflows go through it.
+                    if (expected[step.ordinal()] >= 0 && runs != null && runs.getTotalCount() > 0) {
+                        final var share = Math.min(1, (double) histograms[step.ordinal()].getTotalCount() / runs.getTotalCount());
+                        total += Math.round(expected[step.ordinal()] * share);
+                    }
+                } else {
+                    total = expected[step.ordinal()] < 0 ? -1 : total + expected[step.ordinal()];
+                }
+            }
+            return new Estimates(pipeline, expected, following);
+        }
+
+        long remainingMillis(StoryWorkflowState state, long stepElapsedMillis) {
+            final var i = state.ordinal();
+            if (expectedMillis[i] < 0 || followingMillis[i] < 0) {
+                return -1;
+            }
+            // A step taking longer than usual is expected to end soon.
+            return Math.max(0, expectedMillis[i] - stepElapsedMillis) + followingMillis[i];
+        }
+
+        @Override
+        public String toString() {
+            final var sb = new StringBuilder("Estimates{").append(pipeline).append(": ");
+            for (final var step : pipeline.steps()) {
+                sb.append(step).append('=').append(expectedMillis[step.ordinal()]).append("ms ");
+            }
+            return sb.append('}').toString();
+        }
+    }
+}
@@ -18,6 +18,9 @@ package io.github.alexandreroman.temporalstory;
 
 import io.temporal.activity.ActivityInterface;
 
+import java.util.List;
+import java.util.Map;
+
 @ActivityInterface
 public interface StoryActivities {
     /**
@@ -30,6 +33,64 @@ public interface StoryActivities {
      */
     Story generateStory(String characterName, String fear, String language);
 
+    /**
+     * Generates the outline of a long story, split in chapters.
+     *
+     * @param characterName Name of the main character.
+     * @param fear          The fear to be overcome in the story.
+     * @param language      The language in which to write the story.
+     * @param chapters      The number of chapters of the story.
+     * @return A StoryOutline object containing the title and a summary of each chapter.
+     */
+    StoryOutline generateOutline(String characterName, String fear, String language, int chapters);
+
+    /**
+     * Generates the text content of a chapter, following the outline of the story.
+     *
+     * @param outline       The outline of the story.
+     * @param index         The index of the chapter to write, starting at 0.
+     * @param characterName Name of the main character.
+     * @param language      The language in which to write the chapter.
+     * @return The text of the chapter, without its title.
+     */
+    String generateChapter(StoryOutline outline, int index, String characterName, String language);
+
+    /**
+     * Persists a chapter of a story being written, so that it can be read
+     * before the story is complete.
+     *
+     * @param title   The title of the story.
+     * @param index   The index of the chapter, starting at 0.
+     * @param content The text of the chapter, including its title.
+     */
+    void saveChapter(String title, int index, String content);
+
+    /**
+     * Translates the text content of a story.
+     *
+     * @param story        The generated story.
+     * @param fromLanguage The language the story is written in.
+     * @param toLanguage   The language to translate the story to.
+     * @return A Story object containing the translated title and content.
+     */
+    Story translateStory(Story story, String fromLanguage, String toLanguage);
+
+    /**
+     * Checks that the text content of a story is safe for children.
+     *
+     * @param story The generated story, or a chapter of it.
+     * @return A ModerationVerdict object telling whether the story is approved.
+     */
+    ModerationVerdict moderateStory(Story story);
+
+    /**
+     * Persists the moderation verdict of a story.
+     * This must be called before {@link #saveStory(Story)}, which makes the story available.
+     *
+     * @param verdict The moderation verdict.
+     */
+    void saveModeration(ModerationVerdict verdict);
+
     /**
      * Creates a detailed prompt for image generation based on the story content.
      * 
@@ -54,4 +115,20 @@ public interface StoryActivities {
      * @param story The complete story object.
      */
     void saveStory(Story story);
+
+    /**
+     * Persists the editions of a story translated to several languages.
+     * This must be called before {@link #saveStory(Story)}, which makes the story available.
+     *
+     * @param editions The complete story for each language, starting with the original one.
+     */
+    void saveEditions(Map<String, Story> editions);
+
+    /**
+     * Records how long each step of a completed workflow took, in order to
+     * estimate the remaining time of the next workflows.
+     *
+     * @param transitions the state changes of the workflow
+     */
+    void recordStepLatencies(List<StoryWorkflow.Transition> transitions);
 }
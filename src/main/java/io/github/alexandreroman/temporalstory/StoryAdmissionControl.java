@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory;
+
+import io.temporal.api.enums.v1.TaskQueueType;
+import io.temporal.api.taskqueue.v1.TaskQueue;
+import io.temporal.api.workflowservice.v1.DescribeTaskQueueRequest;
+import io.temporal.client.WorkflowClient;
+import io.temporal.common.Priority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decides whether a new story workflow may be started, based on the current
+ * backlog of the story task queue and the number of running story workflows.
+ * Load is sampled from Temporal at most once per refresh interval, so that
+ * admission checks stay cheap on the request path.
+ */
+@Component
+class StoryAdmissionControl {
+    private static final String TASK_QUEUE = "story-tasks";
+    private static final String IN_FLIGHT_QUERY = "WorkflowType = 'StoryWorkflow' AND ExecutionStatus = 'Running'";
+    private static final long SAMPLE_TIMEOUT_MILLIS = 2000;
+
+    private final Logger logger = LoggerFactory.getLogger(StoryAdmissionControl.class);
+    private final WorkflowClient workflowClient;
+    private final AppConfig.Admission config;
+    private final AtomicReference<LoadSnapshot> snapshot = new AtomicReference<>();
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    StoryAdmissionControl(WorkflowClient workflowClient, AppConfig config) {
+        this.workflowClient = workflowClient;
+        this.config = config.admission();
+    }
+
+    /**
+     * Admits a new story request.
+     *
+     * @param apiKey the API key sent by the caller, if any
+     * @return the lane the request has been admitted in
+     * @throws TooManyRequestsException if the system is overloaded for this lane
+     */
+    Lane admit(String apiKey) {
+        final var lane = resolveLane(apiKey);
+        if (!config.enabled()) {
+            return lane;
+        }
+        final var load = currentLoad();
+        final var retryAfter = checkLimits(load, lane);
+        if (retryAfter != null) {
+            logger.warn("Rejecting story request in lane {}: load={} retryAfter={}", lane, load, retryAfter);
+            throw new TooManyRequestsException("Too many stories are being generated, please retry later", retryAfter);
+        }
+        return lane;
+    }
+
+    /**
+     * Tells whether the story pipeline is quiet enough to run background work.
+     *
+     * @param maxLoad fraction of the admission limits the current load must stay under
+     */
+    boolean isOffPeak(double maxLoad) {
+        final var load = currentLoad();
+        // Unlike admission, background work fails closed when the load is unknown.
+        return load != null && load.known()
+                && load.backlog() < config.maxBacklog() * maxLoad
+                && load.inFlight() < config.maxInFlight() * maxLoad;
+    }
+
+    Lane resolveLane(String apiKey) {
+        return apiKey != null && config.priorityApiKeys().contains(apiKey) ? Lane.PRIORITY : Lane.STANDARD;
+    }
+
+    /**
+     * Checks a load snapshot against the limits of a lane.
+     *
+     * @return <code>null</code> if the request is admitted, otherwise the delay
+     * the caller should wait before retrying
+     */
+    Duration checkLimits(LoadSnapshot load, Lane lane) {
+        if (load == null || !load.known()) {
+            // Fail open: we'd rather start a late story than reject everybody
+            // because Temporal could not tell us how busy it is.
+            return null;
+        }
+        final var headroom = lane == Lane.PRIORITY ? config.priorityHeadroom() : 1.0;
+        final var maxBacklog = (long) (config.maxBacklog() * headroom);
+        final var maxInFlight = (long) (config.maxInFlight() * headroom);
+
+        Duration retryAfter = null;
+        if (load.backlog() >= maxBacklog) {
+            // Estimate how long it takes for the queue to drain below the limit.
+            final var excess = load.backlog() - maxBacklog + 1;
+            retryAfter = load.dispatchRate() > 0
+                    ? Duration.ofMillis((long) Math.ceil(excess * 1000 / load.dispatchRate()))
+                    : config.retryAfter();
+        }
+        if (load.inFlight() >= maxInFlight) {
+            retryAfter = retryAfter == null || retryAfter.compareTo(config.retryAfter()) < 0
+                    ? config.retryAfter() : retryAfter;
+        }
+        if (retryAfter == null) {
+            return null;
+        }
+        if (retryAfter.compareTo(Duration.ofSeconds(1)) < 0) {
+            return Duration.ofSeconds(1);
+        }
+        return retryAfter.compareTo(config.maxRetryAfter()) > 0 ? config.maxRetryAfter() : retryAfter;
+    }
+
+    private LoadSnapshot currentLoad() {
+        final var current = snapshot.get();
+        if (current != null && !current.isOlderThan(config.refreshInterval())) {
+            return current;
+        }
+        if (!refreshLock.tryLock()) {
+            // Another request is already refreshing the snapshot: don't pile up on Temporal.
+            return current;
+        }
+        try {
+            final var fresh = sampleLoad();
+            snapshot.set(fresh);
+            return fresh;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private LoadSnapshot sampleLoad() {
+        try {
+            final var namespace = workflowClient.getOptions().getNamespace();
+            final var stub = workflowClient.getWorkflowServiceStubs().blockingStub()
+                    .withDeadlineAfter(SAMPLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            long backlog = 0;
+            double dispatchRate = 0;
+            for (final var type : List.of(TaskQueueType.TASK_QUEUE_TYPE_WORKFLOW, TaskQueueType.TASK_QUEUE_TYPE_ACTIVITY)) {
+                final var resp = stub.describeTaskQueue(DescribeTaskQueueRequest.newBuilder()
+                        .setNamespace(namespace)
+                        .setTaskQueue(TaskQueue.newBuilder().setName(TASK_QUEUE).build())
+                        .setTaskQueueType(type)
+                        .setReportStats(true)
+                        .build());
+                backlog += resp.getStats().getApproximateBacklogCount();
+                dispatchRate += resp.getStats().getTasksDispatchRate();
+            }
+            final var inFlight = workflowClient.countWorkflows(IN_FLIGHT_QUERY).getCount();
+            final var load = new LoadSnapshot(true, backlog, dispatchRate, inFlight, System.nanoTime());
+            logger.debug("Sampled story load: {}", load);
+            return load;
+        } catch (RuntimeException e) {
+            logger.warn("Unable to sample story load: admitting requests until next refresh", e);
+            return new LoadSnapshot(false, 0, 0, 0, System.nanoTime());
+        }
+    }
+
+    /**
+     * Admission lanes: the priority lane is reserved to paying tenants, who get
+     * more headroom and whose workflows are dispatched first by Temporal.
+     */
+    enum Lane {
+        PRIORITY(1),
+        STANDARD(3);
+
+        private final int priorityKey;
+
+        Lane(int priorityKey) {
+            this.priorityKey = priorityKey;
+        }
+
+        Priority toPriority() {
+            return Priority.newBuilder().setPriorityKey(priorityKey).build();
+        }
+    }
+
+    /**
+     * Load of the story pipeline at a given time.
+     *
+     * @param known        whether the load could be sampled
+     * @param backlog      approximate number of tasks waiting in the task queue
+     * @param dispatchRate number of tasks dispatched per second
+     * @param inFlight     number of running story workflows
+     * @param sampledAt    when this snapshot was taken (see {@link System#nanoTime()})
+     */
+    record LoadSnapshot(boolean known, long backlog, double dispatchRate, long inFlight, long sampledAt) {
+        boolean isOlderThan(Duration maxAge) {
+            return System.nanoTime() - sampledAt > maxAge.toNanos();
+        }
+    }
+}
@@ -17,23 +17,42 @@
 package io.github.alexandreroman.temporalstory;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletionException;
 
 @RestController
+@Profile("!worker")
 @CrossOrigin
 class StoryController {
+    // Time left to the service to respond once waiting for a story timed out,
+    // as it then gets the state of the story from a worker.
+    private static final Duration RESULT_GRACE = Duration.ofSeconds(10);
     private final Logger logger = LoggerFactory.getLogger(StoryController.class);
     private final StoryService storyService;
+    private final ClientQuota clientQuota;
+    private final int maxChapters;
+    private final int maxTranslations;
+    private final Duration maxWait;
 
-    StoryController(StoryService storyService) {
+    StoryController(StoryService storyService, ClientQuota clientQuota, AppConfig config) {
         this.storyService = storyService;
+        this.clientQuota = clientQuota;
+        this.maxChapters = config.story().maxChapters();
+        this.maxTranslations = config.story().maxTranslations();
+        this.maxWait = config.story().maxWait();
     }
 
     /**
@@ -41,37 +60,113 @@ class StoryController {
      *
      * @param characterName the name of the main character (defaults to "John")
      * @param fear          the fear the character faces (defaults to "Night")
-     * @param language      the language of the story (defaults to "English")
-     * @return a response containing the workflow ID of the started process
+     * @param languages     the languages of the story (defaults to "English"): the story is written
+     *                      in the first one, and translated to the others, up to the configured maximum
+     * @param chapters      the number of chapters (defaults to 1): long stories are written
+     *                      one chapter at a time, and can be read while being written
+     * @param waitFor       the stage of the story to wait for before responding: <code>TEXT</code>
+     *                      for the approved story text, <code>COMPLETED</code> for the story along
+     *                      with its cover; the response is sent as soon as the workflow is started
+     *                      if not set
+     * @param timeout       how long to wait for the stage, in seconds (defaults to, and is capped
+     *                      by, the configured maximum)
+     * @param apiKey        the API key of the caller, used to select an admission lane and a quota
+     * @param request       the incoming request, used to identify callers without a configured API key
+     * @return a response containing the workflow ID of the started process; when waiting for a
+     *         stage, the state of the workflow is included, as well as the story if the stage was
+     *         reached in time: no request thread is held while waiting
      */
     @PostMapping(path = "/api/story", produces = MediaType.APPLICATION_JSON_VALUE)
-    ResponseEntity<NewStoryResponse> generateStory(
+    DeferredResult<ResponseEntity<NewStoryResponse>> generateStory(
             @RequestParam(value = "characterName", required = false, defaultValue = "John") String characterName,
             @RequestParam(value = "fear", required = false, defaultValue = "Night") String fear,
-            @RequestParam(name = "language", required = false, defaultValue = "English") String language) {
-        logger.info("Creating new story: characterName={} fear={} language={}", characterName, fear, language);
-        final var workflowId = storyService.generateStory(characterName, fear, language);
-        return ResponseEntity.created(URI.create("/api/story/" + workflowId)).body(new NewStoryResponse(workflowId));
+            @RequestParam(name = "language", required = false, defaultValue = "English") List<String> languages,
+            @RequestParam(name = "chapters", required = false, defaultValue = "1") int chapters,
+            @RequestParam(name = "waitFor", required = false) StoryWorkflow.Stage waitFor,
+            @RequestParam(name = "timeout", required = false) Long timeout,
+            @RequestHeader(name = "X-API-Key", required = false) String apiKey,
+            HttpServletRequest request) {
+        final var distinctLanguages = languages.stream().map(String::trim).filter(l -> !l.isEmpty()).distinct().toList();
+        // Each translation takes as many model calls as the story has chapters.
+        if (distinctLanguages.isEmpty() || distinctLanguages.size() > maxTranslations + 1
+                || chapters < 1 || chapters > maxChapters || (timeout != null && timeout < 0)) {
+            return completed(ResponseEntity.badRequest().build());
+        }
+        final var language = distinctLanguages.getFirst();
+        final var translations = distinctLanguages.subList(1, distinctLanguages.size());
+        logger.info("Creating new story: characterName={} fear={} language={} translations={} chapters={}",
+                characterName, fear, language, translations, chapters);
+        final var params = new StoryWorkflow.StoryParams(characterName, fear, language, translations, chapters);
+        // Invalid and rejected requests are not charged to the quota of the caller.
+        final var clientId = clientQuota.clientId(apiKey, request.getRemoteAddr());
+        if (waitFor == null) {
+            final var workflowId = storyService.generateStory(params, apiKey, clientId);
+            return completed(ResponseEntity.created(URI.create("/api/story/" + workflowId)).body(new NewStoryResponse(workflowId)));
+        }
+
+        // Clients which only need the story get it right away, without polling.
+        final var wait = timeout == null ? maxWait : Duration.ofSeconds(Math.min(timeout, maxWait.toSeconds()));
+        final var result = new DeferredResult<ResponseEntity<NewStoryResponse>>(wait.plus(RESULT_GRACE).toMillis());
+        storyService.generateStory(params, apiKey, clientId, waitFor, wait).whenComplete((created, e) -> {
+            if (e != null) {
+                result.setErrorResult(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                return;
+            }
+            final var body = new NewStoryResponse(created.workflowId(), created.state(), created.story());
+            result.setResult(switch (created.state()) {
+                case FAILED -> ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(body);
+                case CANCELLED -> ResponseEntity.status(HttpStatus.GONE).body(body);
+                case REJECTED -> ResponseEntity.unprocessableEntity().body(body);
+                // The story may not be ready if the timeout expired: clients fall back to polling.
+                default -> ResponseEntity.created(URI.create("/api/story/" + created.workflowId())).body(body);
+            });
+        });
+        return result;
+    }
+
+    private static <T> DeferredResult<T> completed(T value) {
+        final var result = new DeferredResult<T>();
+        result.setResult(value);
+        return result;
     }
 
     /**
      * Retrieves the current status or final result of a story generation workflow.
      *
      * @param workflowId the ID of the workflow to check
+     * @param language   the language of the edition to return, defaults to the original one
      * @return a response containing the current state and, if completed, the story
-     *         details
+     *         details along with the languages it is available in; while in progress,
+     *         the time spent in the current step and an estimate of the remaining time
+     *         are included when available, as well as the chapters of a long story
+     *         written so far
      */
     @GetMapping(path = "/api/story/{workflowId}")
-    ResponseEntity<?> getStory(@PathVariable("workflowId") String workflowId) {
+    ResponseEntity<?> getStory(@PathVariable("workflowId") String workflowId,
+                               @RequestParam(name = "lang", required = false) String language) {
         final var storyOpt = storyService.getStory(workflowId);
         if (storyOpt.isPresent()) {
-            return ResponseEntity.ok(new StoryProgress(StoryWorkflowState.COMPLETED, storyOpt.get()));
+            final var edition = language == null ? storyOpt : storyService.getStory(workflowId, language);
+            if (edition.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No edition in language " + language);
+            }
+            return ResponseEntity.ok(new StoryProgress(StoryWorkflowState.COMPLETED, edition.get(),
+                    null, null, storyService.getLanguages(workflowId)));
         }
 
-        final var state = storyService.getState(workflowId);
+        final var status = storyService.getStatus(workflowId);
+        final var state = status.state();
         return switch (state) {
-            case IDLE, INITIALIZING, GENERATING_STORY, PREPARING_COVER, GENERATING_COVER, SAVING_RESULTS ->
-                ResponseEntity.status(HttpStatus.ACCEPTED).body(new StoryProgress(state, null));
+            case IDLE, INITIALIZING, GENERATING_STORY, GENERATING_OUTLINE ->
+                ResponseEntity.status(HttpStatus.ACCEPTED).body(new StoryProgress(state, null,
+                        status.stepElapsedMillis() < 0 ? null : status.stepElapsedMillis(),
+                        status.estimatedRemainingMillis() < 0 ? null : status.estimatedRemainingMillis(), null));
+            case GENERATING_CHAPTERS, PREPARING_COVER, GENERATING_COVER, TRANSLATING, SAVING_RESULTS ->
+                // Chapters of long stories can be read while the story is not complete.
+                ResponseEntity.status(HttpStatus.ACCEPTED).body(new StoryProgress(state,
+                        storyService.getDraft(workflowId).orElse(null),
+                        status.stepElapsedMillis() < 0 ? null : status.stepElapsedMillis(),
+                        status.estimatedRemainingMillis() < 0 ? null : status.estimatedRemainingMillis(), null));
             case COMPLETED -> {
                 if (storyOpt.isEmpty()) {
                     throw new IllegalStateException(
@@ -80,13 +175,54 @@ class StoryController {
                 yield ResponseEntity.ok(new StoryProgress(state, storyOpt.get()));
             }
             case FAILED -> ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to get story");
+            case CANCELLED -> ResponseEntity.status(HttpStatus.GONE).body(new StoryProgress(state, null));
+            // The story did not pass content-safety moderation, and was never saved.
+            case REJECTED -> ResponseEntity.unprocessableEntity().body(new StoryProgress(state, null));
         };
     }
 
-    record NewStoryResponse(String workflowId) {
+    /**
+     * Cancels a story generation workflow, for instance when the user leaves the story page.
+     *
+     * @param workflowId the ID of the workflow to cancel
+     * @return 202 if the cancellation was requested, 409 if the story is already available,
+     *         404 if there is no such workflow
+     */
+    @DeleteMapping(path = "/api/story/{workflowId}")
+    ResponseEntity<?> cancelStory(@PathVariable("workflowId") String workflowId) {
+        if (storyService.getStory(workflowId).isPresent()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Story already completed");
+        }
+        if (!storyService.cancelStory(workflowId)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.accepted().build();
+    }
+
+    /**
+     * Rejects overloaded requests with a 429 status and a hint telling clients
+     * when to come back.
+     */
+    @ExceptionHandler(TooManyRequestsException.class)
+    ResponseEntity<String> onTooManyRequests(TooManyRequestsException e) {
+        final var retryAfterSeconds = Math.max(1, (e.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(e.getMessage());
     }
 
     @JsonInclude(JsonInclude.Include.NON_EMPTY)
-    record StoryProgress(StoryWorkflowState state, Story story) {
+    record NewStoryResponse(String workflowId, StoryWorkflowState state, Story story) {
+        NewStoryResponse(String workflowId) {
+            this(workflowId, null, null);
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    record StoryProgress(StoryWorkflowState state, Story story,
+                         Long stepElapsedMillis, Long estimatedRemainingMillis, List<String> languages) {
+        StoryProgress(StoryWorkflowState state, Story story) {
+            this(state, story, null, null, null);
+        }
     }
 }
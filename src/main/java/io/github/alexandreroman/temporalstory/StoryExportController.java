@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
+/**
+ * Exports all stories for back-office tools.
+ * <p>
+ * Unlike the story API, this endpoint is not meant to be called from browsers:
+ * it does not allow cross-origin requests, and callers must send one of the
+ * configured export API keys.
+ */
+@RestController
+@Profile("!worker")
+class StoryExportController {
+    private final Logger logger = LoggerFactory.getLogger(StoryExportController.class);
+    private final StoryService storyService;
+    private final List<byte[]> apiKeys;
+
+    StoryExportController(StoryService storyService, AppConfig config) {
+        this.storyService = storyService;
+        this.apiKeys = config.export().apiKeys().stream()
+                .filter(key -> !key.isBlank())
+                .map(key -> key.getBytes(StandardCharsets.UTF_8))
+                .toList();
+    }
+
+    /**
+     * Exports all stories as newline-delimited JSON.
+     * <p>
+     * Stories are streamed as they are read from Redis: a checkpoint line
+     * holding a cursor follows each batch, and an interrupted export can be
+     * resumed by passing the last cursor received. The last line of a complete
+     * export is a checkpoint with <code>done</code> set to <code>true</code>.
+     * <p>
+     * The response is written on the request thread: a full export may take
+     * longer than the timeout of asynchronous requests.
+     *
+     * @param cursor the cursor to resume the export from, starts from the beginning if not set
+     * @param apiKey the API key of the caller, which must be allowed to export stories
+     */
+    @GetMapping(path = "/api/stories/export")
+    void exportStories(@RequestParam(name = "cursor", required = false, defaultValue = "0") String cursor,
+                       @RequestHeader(name = "X-API-Key", required = false) String apiKey,
+                       HttpServletResponse response) throws IOException {
+        if (!isAllowed(apiKey)) {
+            logger.warn("Rejected story export without a valid API key");
+            response.sendError(HttpStatus.FORBIDDEN.value(), "Export not allowed");
+            return;
+        }
+        if (!cursor.matches("\\d{1,20}")) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Invalid cursor");
+            return;
+        }
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        storyService.exportStories(cursor, response.getOutputStream());
+    }
+
+    private boolean isAllowed(String apiKey) {
+        if (apiKey == null) {
+            return false;
+        }
+        final var candidate = apiKey.getBytes(StandardCharsets.UTF_8);
+        var allowed = false;
+        for (final var key : apiKeys) {
+            // Keys are compared in constant time, so that they cannot be guessed from response times.
+            allowed |= MessageDigest.isEqual(key, candidate);
+        }
+        return allowed;
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory;
+
+import java.util.List;
+
+/**
+ * The outline of a long story, which chapters are written from.
+ *
+ * @param title    the title of the story
+ * @param chapters the chapters of the story, in order
+ */
+public record StoryOutline(String title, List<Chapter> chapters) {
+    /**
+     * @param title   the title of the chapter
+     * @param summary what happens in the chapter
+     */
+    public record Chapter(String title, String summary) {
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.zset.Aggregate;
+import org.springframework.data.redis.connection.zset.Weights;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * A pool of ready-made stories for the most requested (fear, language) pairs.
+ * <p>
+ * Stories are generated in the background with a placeholder instead of the
+ * name of the main character, which is substituted when a story is claimed.
+ * Each pair has its own Redis list: claiming a story pops it from the list,
+ * so that a story is never handed out twice.
+ * <p>
+ * Cover URLs returned by image models expire: pooled stories are discarded
+ * once they get older than the configured maximum age.
+ */
+@Component
+public class StoryPool {
+    /**
+     * Name of the main character in pooled stories.
+     */
+    public static final String PLACEHOLDER = "{{HERO}}";
+    /**
+     * Prefix of the IDs of pooled stories, which are only templates until they are claimed.
+     */
+    public static final String STORY_ID_PREFIX = "pool-";
+    private static final String POPULARITY_KEY = "temporal-story:pool:popularity";
+    private static final String STORIES_KEY_PREFIX = "temporal-story:pool:stories:";
+    private static final int MAX_TRACKED_PAIRS = 1000;
+    private static final int MAX_CLAIM_ATTEMPTS = 5;
+    // Names are substituted in pooled stories without being moderated: only plain names are.
+    private static final Pattern PLAIN_NAME = Pattern.compile("\\p{L}+(?:[ '-]\\p{L}+){0,3}");
+    private static final int MAX_NAME_LENGTH = 30;
+
+    private final Logger logger = LoggerFactory.getLogger(StoryPool.class);
+    private final StringRedisTemplate redis;
+    private final StoryRepository storyRepository;
+    private final StoryAdmissionControl admissionControl;
+    private final ObjectMapper objectMapper;
+    private final AppConfig.Pool config;
+
+    StoryPool(StringRedisTemplate redis, StoryRepository storyRepository, StoryAdmissionControl admissionControl,
+              ObjectMapper objectMapper, AppConfig config) {
+        this.redis = redis;
+        this.storyRepository = storyRepository;
+        this.admissionControl = admissionControl;
+        this.objectMapper = objectMapper;
+        this.config = config.pool();
+    }
+
+    /**
+     * Counts a story request, so that the most requested pairs get pooled.
+     */
+    void recordRequest(String fear, String language) {
+        if (!config.enabled()) {
+            return;
+        }
+        try {
+            redis.opsForZSet().incrementScore(POPULARITY_KEY, pairOf(fear, language), 1);
+        } catch (RuntimeException e) {
+            logger.warn("Unable to record story request popularity", e);
+        }
+    }
+
+    /**
+     * Claims a pooled story.
+     *
+     * @param characterName the name of the main character
+     * @return the story, personalized with the name of the character, if one was available;
+     *         names other than plain ones never get a pooled story, and are left to a workflow
+     *         moderating the story written with them
+     */
+    Optional<Story> claim(String characterName, String fear, String language) {
+        if (!config.enabled()) {
+            return Optional.empty();
+        }
+        if (!isPlainName(characterName)) {
+            logger.debug("Not claiming a pooled story for character name: {}", characterName);
+            return Optional.empty();
+        }
+        try {
+            final var key = STORIES_KEY_PREFIX + pairOf(fear, language);
+            for (int i = 0; i < MAX_CLAIM_ATTEMPTS; ++i) {
+                final var value = redis.opsForList().leftPop(key);
+                if (value == null) {
+                    return Optional.empty();
+                }
+                final var entry = decode(value);
+                if (!entry.isOlderThan(config.maxAge())) {
+                    final var story = entry.story();
+                    return Optional.of(new Story(
+                            story.title().replace(PLACEHOLDER, characterName),
+                            story.content().replace(PLACEHOLDER, characterName),
+                            story.cover()));
+                }
+            }
+        } catch (RuntimeException e) {
+            // The pool is only a shortcut: fall back to generating a story.
+            logger.warn("Unable to claim a pooled story", e);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return whether a name only holds a few words made of letters
+     */
+    static boolean isPlainName(String characterName) {
+        return characterName.length() <= MAX_NAME_LENGTH && PLAIN_NAME.matcher(characterName).matches();
+    }
+
+    /**
+     * Plans which stories to generate to refill the pool.
+     * Nothing is planned while the story pipeline is busy with user requests,
+     * but request counts still decay.
+     *
+     * @return the stories to generate for each pair
+     */
+    public List<Refill> planRefill() {
+        if (!config.enabled()) {
+            return List.of();
+        }
+        final var refills = admissionControl.isOffPeak(config.offPeakLoad()) ? planRefills() : List.<Refill>of();
+
+        // Decay request counts, so that the pool follows what users ask for lately.
+        // Pairs are recorded on every request: the least requested ones are dropped,
+        // even while busy, so that the set does not grow without bounds.
+        redis.opsForZSet().unionAndStore(POPULARITY_KEY, List.of(), POPULARITY_KEY, Aggregate.SUM, Weights.of(0.5));
+        redis.opsForZSet().removeRange(POPULARITY_KEY, 0, -MAX_TRACKED_PAIRS - 1);
+        return refills;
+    }
+
+    private List<Refill> planRefills() {
+        final var refills = new ArrayList<Refill>();
+        final var popular = redis.opsForZSet()
+                .reverseRangeByScoreWithScores(POPULARITY_KEY, config.minRequests(), Double.MAX_VALUE, 0, config.popularPairs());
+        int budget = config.maxRefill();
+        if (popular != null) {
+            for (final var pair : popular) {
+                if (budget == 0) {
+                    break;
+                }
+                final var key = STORIES_KEY_PREFIX + pair.getValue();
+                purgeExpired(key);
+                final var size = redis.opsForList().size(key);
+                final var missing = Math.min(budget, config.size() - (size == null ? 0 : size.intValue()));
+                if (missing > 0) {
+                    final var separator = pair.getValue().lastIndexOf('|');
+                    refills.add(new Refill(pair.getValue().substring(0, separator),
+                            pair.getValue().substring(separator + 1), missing));
+                    budget -= missing;
+                }
+            }
+        }
+        return refills;
+    }
+
+    /**
+     * Moves a generated story to the pool.
+     *
+     * @param storyId the ID the story was saved with
+     * @return <code>false</code> if the story was not usable
+     */
+    public boolean add(String storyId, String fear, String language) {
+        final var story = storyRepository.getStory(storyId);
+        if (story.isEmpty()) {
+            // Already moved.
+            return true;
+        }
+        final var usable = story.get().content().contains(PLACEHOLDER);
+        if (usable) {
+            final var key = STORIES_KEY_PREFIX + pairOf(fear, language);
+            redis.opsForList().rightPush(key, encode(new Entry(story.get(), System.currentTimeMillis())));
+            redis.expire(key, config.maxAge());
+        } else {
+            logger.warn("Discarding pooled story {}: the placeholder was not kept", storyId);
+        }
+        storyRepository.deleteStory(storyId);
+        return usable;
+    }
+
+    /**
+     * Deletes a generated story which did not make it to the pool.
+     *
+     * @param storyId the ID the story was generated with
+     */
+    public void discard(String storyId) {
+        storyRepository.deleteStory(storyId);
+    }
+
+    private void purgeExpired(String key) {
+        // Stories are pushed in order: expired stories are at the head of the list.
+        while (true) {
+            final var head = redis.opsForList().index(key, 0);
+            if (head == null || !decode(head).isOlderThan(config.maxAge())) {
+                return;
+            }
+            redis.opsForList().leftPop(key);
+        }
+    }
+
+    private static String pairOf(String fear, String language) {
+        return fear.trim().toLowerCase(Locale.ROOT) + "|" + language.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private String encode(Entry entry) {
+        try {
+            return objectMapper.writeValueAsString(entry);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to encode pooled story", e);
+        }
+    }
+
+    private Entry decode(String value) {
+        try {
+            return objectMapper.readValue(value, Entry.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to decode pooled story", e);
+        }
+    }
+
+    /**
+     * Stories to generate for a (fear, language) pair.
+     */
+    public record Refill(String fear, String language, int count) {
+    }
+
+    /**
+     * @param story     the story, with a placeholder for the name of the main character
+     * @param createdAt when the story was generated (milliseconds since epoch)
+     */
+    record Entry(Story story, long createdAt) {
+        boolean isOlderThan(Duration maxAge) {
+            return System.currentTimeMillis() - createdAt > maxAge.toMillis();
+        }
+    }
+}
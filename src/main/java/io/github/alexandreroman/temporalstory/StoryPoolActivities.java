@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory;
+
+import io.temporal.activity.ActivityInterface;
+
+import java.util.List;
+
+@ActivityInterface
+public interface StoryPoolActivities {
+    /**
+     * Plans which stories to generate to refill the pool.
+     *
+     * @return the stories to generate, empty if the system is busy
+     */
+    List<StoryPool.Refill> planRefill();
+
+    /**
+     * Moves a generated story to the pool.
+     *
+     * @param storyId  the ID the story was saved with
+     * @param fear     the fear the story was generated for
+     * @param language the language the story was generated in
+     */
+    void addToPool(String storyId, String fear, String language);
+
+    /**
+     * Deletes what is left of a story which cannot be pooled, such as the
+     * moderation verdict of a rejected story.
+     *
+     * @param storyId the ID the story was generated with
+     */
+    void discardStory(String storyId);
+}
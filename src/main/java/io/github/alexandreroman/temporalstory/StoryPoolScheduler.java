@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory;
+
+import io.temporal.api.enums.v1.ScheduleOverlapPolicy;
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.client.schedules.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Registers the Temporal Schedule refilling the story pool.
+ * Every instance registers the same schedule at startup: the first one
+ * creates it, the next ones update it with their configuration.
+ */
+@Component
+@Profile("!api")
+class StoryPoolScheduler {
+    private static final String SCHEDULE_ID = "story-pool-refill";
+
+    private final Logger logger = LoggerFactory.getLogger(StoryPoolScheduler.class);
+    private final ScheduleClient scheduleClient;
+    private final AppConfig.Pool config;
+
+    StoryPoolScheduler(ObjectProvider<ScheduleClient> scheduleClient, WorkflowClient workflowClient, AppConfig config) {
+        // Fall back to a client sharing the connection of the workflow client
+        // when the Temporal starter does not provide one.
+        this.scheduleClient = scheduleClient.getIfAvailable(() -> ScheduleClient.newInstance(
+                workflowClient.getWorkflowServiceStubs(),
+                ScheduleClientOptions.newBuilder().setNamespace(workflowClient.getOptions().getNamespace()).build()));
+        this.config = config.pool();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void registerSchedule() {
+        if (!config.enabled()) {
+            return;
+        }
+        final var schedule = Schedule.newBuilder()
+                .setAction(ScheduleActionStartWorkflow.newBuilder()
+                        .setWorkflowType(StoryPoolWorkflow.class)
+                        .setOptions(WorkflowOptions.newBuilder()
+                                .setWorkflowId(SCHEDULE_ID)
+                                .setTaskQueue("story-tasks")
+                                .build())
+                        .build())
+                .setSpec(ScheduleSpec.newBuilder()
+                        .setIntervals(List.of(new ScheduleIntervalSpec(config.refillInterval())))
+                        .build())
+                .setPolicy(SchedulePolicy.newBuilder()
+                        // Never run two refills at the same time.
+                        .setOverlap(ScheduleOverlapPolicy.SCHEDULE_OVERLAP_POLICY_SKIP)
+                        .build())
+                .build();
+        try {
+            try {
+                scheduleClient.createSchedule(SCHEDULE_ID, schedule, ScheduleOptions.newBuilder().build());
+                logger.info("Created story pool schedule: interval={}", config.refillInterval());
+            } catch (ScheduleAlreadyRunningException e) {
+                scheduleClient.getHandle(SCHEDULE_ID).update(input -> new ScheduleUpdate(schedule));
+                logger.debug("Updated story pool schedule: interval={}", config.refillInterval());
+            }
+        } catch (RuntimeException e) {
+            // The pool is only a shortcut: the app works fine without it.
+            logger.warn("Unable to register story pool schedule", e);
+        }
+    }
+}
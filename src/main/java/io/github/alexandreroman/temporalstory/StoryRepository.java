@@ -16,12 +16,22 @@
 
 package io.github.alexandreroman.temporalstory;
 
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.api.async.RedisKeyAsyncCommands;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 
@@ -34,8 +44,17 @@ public class StoryRepository {
         this.redis = redis;
     }
 
+    private static final Duration DRAFT_TTL = Duration.ofDays(1);
+    private static final String KEY_PREFIX = "temporal-story:stories:";
+    private static final byte[][] EXPORTED_FIELDS = toBytes(
+            "title", "content", "coverUrl", "coverWidth", "coverHeight", "languages");
+
     private String getKey(String workflowId) {
-        return String.format("temporal-story:stories:%s", workflowId);
+        return KEY_PREFIX + workflowId;
+    }
+
+    private String getDraftKey(String workflowId) {
+        return String.format("temporal-story:drafts:%s", workflowId);
     }
 
     public void saveStory(String workflowId, Story story) {
@@ -55,16 +74,132 @@ public class StoryRepository {
                 "coverHeight", String.valueOf(story.cover().height())
         );
         redis.opsForHash().putAll(key, values);
+        // The complete story replaces its draft, if any.
+        redis.delete(getDraftKey(workflowId));
+    }
+
+    /**
+     * Saves a chapter of a story being written.
+     * Chapters are kept apart from the story until it is complete, and expire
+     * if the story is never completed.
+     */
+    public void saveChapter(String workflowId, String title, int index, String content) {
+        if (workflowId == null) {
+            throw new IllegalArgumentException("workflowId cannot be null");
+        }
+        if (index < 0) {
+            throw new IllegalArgumentException("index cannot be negative");
+        }
+        logger.debug("Saving chapter {} for workflow {}", index, workflowId);
+        final var key = getDraftKey(workflowId);
+        redis.opsForHash().putAll(key, Map.of(
+                "title", title,
+                "chapter:" + index, content));
+        redis.expire(key, DRAFT_TTL);
+    }
+
+    /**
+     * Loads the chapters of a story being written.
+     *
+     * @return the story title along with the chapters saved so far, in order,
+     *         without a cover: empty if no chapter was saved
+     */
+    public Optional<Story> getDraft(String workflowId) {
+        if (workflowId == null) {
+            throw new IllegalArgumentException("workflowId cannot be null");
+        }
+        final var values = redis.opsForHash().entries(getDraftKey(workflowId));
+        final var title = (String) values.get("title");
+        if (title == null) {
+            return Optional.empty();
+        }
+        // Only contiguous chapters are returned: readers go through a story in order.
+        final var chapters = new ArrayList<String>();
+        for (int i = 0; values.containsKey("chapter:" + i); ++i) {
+            chapters.add((String) values.get("chapter:" + i));
+        }
+        if (chapters.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new Story(title, String.join("\n\n", chapters), null));
+    }
+
+    /**
+     * Saves the moderation verdict of a story.
+     * Chapters of a rejected story are dropped right away.
+     */
+    public void saveModeration(String workflowId, ModerationVerdict verdict) {
+        if (workflowId == null) {
+            throw new IllegalArgumentException("workflowId cannot be null");
+        }
+        if (verdict == null) {
+            throw new IllegalArgumentException("verdict cannot be null");
+        }
+        logger.debug("Saving moderation verdict for workflow {}: {}", workflowId, verdict);
+        redis.opsForHash().putAll(getKey(workflowId), Map.of(
+                "moderation", verdict.approved() ? "approved" : "rejected",
+                "moderationCategories", String.join(",", verdict.categories())));
+        if (!verdict.approved()) {
+            redis.delete(getDraftKey(workflowId));
+        }
+    }
+
+    /**
+     * Saves the editions of a story in several languages, starting with the original one.
+     * Editions are stored along with the story, and share its cover: the original
+     * edition is the story itself, and is not stored twice.
+     */
+    public void saveEditions(String workflowId, Map<String, Story> editions) {
+        if (workflowId == null) {
+            throw new IllegalArgumentException("workflowId cannot be null");
+        }
+        if (editions == null || editions.isEmpty()) {
+            throw new IllegalArgumentException("editions cannot be empty");
+        }
+        logger.debug("Saving story editions for workflow {}: {}", workflowId, editions.keySet());
+        final var values = new HashMap<String, String>();
+        for (final var edition : editions.entrySet().stream().skip(1).toList()) {
+            final var language = normalizeLanguage(edition.getKey());
+            values.put("title:" + language, edition.getValue().title());
+            values.put("content:" + language, edition.getValue().content());
+        }
+        values.put("languages", String.join(",", editions.keySet().stream().map(StoryRepository::normalizeLanguage).toList()));
+        redis.opsForHash().putAll(getKey(workflowId), values);
     }
 
     public Optional<Story> getStory(String workflowId) {
+        return getStory(workflowId, null);
+    }
+
+    /**
+     * Loads a story in a given language.
+     *
+     * @param language the language of the edition to load, <code>null</code> for the original one
+     */
+    public Optional<Story> getStory(String workflowId, String language) {
         if (workflowId == null) {
             throw new IllegalArgumentException("workflowId cannot be null");
         }
-        logger.debug("Loading story for workflow {}", workflowId);
+        logger.debug("Loading story for workflow {}: language={}", workflowId, language);
+        if (language == null) {
+            return loadStory(workflowId, "");
+        }
+        final var edition = loadStory(workflowId, ":" + normalizeLanguage(language));
+        if (edition.isPresent()) {
+            return edition;
+        }
+        // The original edition is the story itself.
+        final var languages = getLanguages(workflowId);
+        if (!languages.isEmpty() && languages.getFirst().equals(normalizeLanguage(language))) {
+            return loadStory(workflowId, "");
+        }
+        return Optional.empty();
+    }
+
+    private Optional<Story> loadStory(String workflowId, String suffix) {
         final var key = getKey(workflowId);
         final var values = redis.opsForHash().multiGet(key,
-                List.of("title", "content", "coverUrl", "coverWidth", "coverHeight"));
+                List.of("title" + suffix, "content" + suffix, "coverUrl", "coverWidth", "coverHeight"));
         if (values == null || values.isEmpty()) {
             return Optional.empty();
         }
@@ -78,4 +213,103 @@ public class StoryRepository {
         }
         return Optional.of(new Story(title, content, new StoryCover(coverUrl, Integer.parseInt(coverWidthStr), Integer.parseInt(coverHeightStr))));
     }
+
+    /**
+     * @return the languages a story is available in, starting with the original one:
+     *         empty if the story was saved without any edition
+     */
+    public List<String> getLanguages(String workflowId) {
+        if (workflowId == null) {
+            throw new IllegalArgumentException("workflowId cannot be null");
+        }
+        final var languages = (String) redis.opsForHash().get(getKey(workflowId), "languages");
+        return languages == null || languages.isEmpty() ? List.of() : List.of(languages.split(","));
+    }
+
+    private static String normalizeLanguage(String language) {
+        return language.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public void deleteStory(String workflowId) {
+        if (workflowId == null) {
+            throw new IllegalArgumentException("workflowId cannot be null");
+        }
+        logger.debug("Deleting story for workflow {}", workflowId);
+        redis.delete(getKey(workflowId));
+    }
+
+    /**
+     * Reads a batch of stories, iterating over all stories with <code>SCAN</code>.
+     * <p>
+     * Redis may return stories more than once during a scan, and returns
+     * batches of any size, including empty ones: the count is only a hint.
+     * Stories saved or deleted during a scan may or may not be returned.
+     *
+     * @param cursor the cursor returned by the previous batch, <code>"0"</code> to start a scan
+     * @param count  the number of keys to look at
+     * @return the stories of the batch, along with the cursor of the next one
+     */
+    public StoryBatch scanStories(String cursor, int count) {
+        if (cursor == null) {
+            throw new IllegalArgumentException("cursor cannot be null");
+        }
+        // The scan cursor is not exposed by RedisTemplate, which cannot resume a scan.
+        final KeyScanCursor<byte[]> scan = redis.execute((RedisCallback<KeyScanCursor<byte[]>>) connection -> {
+            @SuppressWarnings("unchecked")
+            final var commands = (RedisKeyAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+            return commands.scan(ScanCursor.of(cursor), ScanArgs.Builder.matches(KEY_PREFIX + "*").limit(count))
+                    .toCompletableFuture().join();
+        });
+        final var keys = scan.getKeys();
+
+        // Stories of the batch are loaded in a single round trip.
+        final var values = redis.executePipelined((RedisCallback<Object>) connection -> {
+            for (final var key : keys) {
+                connection.hashCommands().hMGet(key, EXPORTED_FIELDS);
+            }
+            return null;
+        });
+        final var stories = new ArrayList<StoredStory>(keys.size());
+        for (int i = 0; i < keys.size(); ++i) {
+            @SuppressWarnings("unchecked")
+            final var fields = (List<String>) values.get(i);
+            final var title = fields.get(0);
+            final var content = fields.get(1);
+            final var coverUrl = fields.get(2);
+            final var coverWidthStr = fields.get(3);
+            final var coverHeightStr = fields.get(4);
+            if (title == null || content == null || coverUrl == null || coverWidthStr == null || coverHeightStr == null) {
+                continue;
+            }
+            final var languages = fields.get(5);
+            stories.add(new StoredStory(
+                    new String(keys.get(i), StandardCharsets.UTF_8).substring(KEY_PREFIX.length()),
+                    new Story(title, content, new StoryCover(coverUrl, Integer.parseInt(coverWidthStr), Integer.parseInt(coverHeightStr))),
+                    languages == null || languages.isEmpty() ? List.of() : List.of(languages.split(","))));
+        }
+        return new StoryBatch(stories, scan.isFinished() ? null : scan.getCursor());
+    }
+
+    private static byte[][] toBytes(String... values) {
+        final var bytes = new byte[values.length][];
+        for (int i = 0; i < values.length; ++i) {
+            bytes[i] = values[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    /**
+     * @param id        the ID of the story
+     * @param story     the story, in its original language
+     * @param languages the languages the story is available in, starting with the original one
+     */
+    public record StoredStory(String id, Story story, List<String> languages) {
+    }
+
+    /**
+     * @param stories the stories of the batch
+     * @param cursor  the cursor of the next batch, <code>null</code> once all stories were read
+     */
+    public record StoryBatch(List<StoredStory> stories, String cursor) {
+    }
 }
@@ -16,45 +16,224 @@
 
 package io.github.alexandreroman.temporalstory;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.opentelemetry.context.Context;
+import io.temporal.api.enums.v1.WorkflowIdConflictPolicy;
+import io.temporal.client.UpdateOptions;
+import io.temporal.client.WithStartWorkflowOperation;
 import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowNotFoundException;
 import io.temporal.client.WorkflowOptions;
+import io.temporal.client.WorkflowUpdateException;
+import io.temporal.client.WorkflowUpdateStage;
+import io.temporal.client.WorkflowUpdateTimeoutOrCancelledException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 @Service
+@Profile("!worker")
 class StoryService {
+    private static final int EXPORT_BATCH_SIZE = 500;
+    // How long to wait for a worker to report the state of a story which was not ready in time.
+    private static final Duration STATUS_TIMEOUT = Duration.ofSeconds(5);
+    // Runs the calls to Temporal which block until a worker handles them, in the tracing context of the request.
+    private static final ExecutorService executor = Context.taskWrapping(Executors.newVirtualThreadPerTaskExecutor());
     private final Logger logger = LoggerFactory.getLogger(StoryService.class);
     private final WorkflowClient workflowClient;
     private final StoryRepository storyRepository;
+    private final StoryAdmissionControl admissionControl;
+    private final StepLatencies stepLatencies;
+    private final StoryPool storyPool;
+    private final ClientQuota clientQuota;
+    private final ObjectMapper objectMapper;
 
-    StoryService(WorkflowClient workflowClient, StoryRepository storyRepository) {
+    StoryService(WorkflowClient workflowClient, StoryRepository storyRepository,
+                 StoryAdmissionControl admissionControl, StepLatencies stepLatencies, StoryPool storyPool,
+                 ClientQuota clientQuota, ObjectMapper objectMapper) {
         this.workflowClient = workflowClient;
         this.storyRepository = storyRepository;
+        this.admissionControl = admissionControl;
+        this.stepLatencies = stepLatencies;
+        this.storyPool = storyPool;
+        this.clientQuota = clientQuota;
+        this.objectMapper = objectMapper;
     }
 
-    String generateStory(String characterName, String fear, String language) {
+    /**
+     * Starts a story workflow.
+     *
+     * @param apiKey   the API key of the caller, used to select an admission lane
+     * @param clientId the caller, charged for the story once it is admitted (see {@link ClientQuota#clientId(String, String)})
+     * @return the ID of the story
+     */
+    String generateStory(StoryWorkflow.StoryParams workflowParams, String apiKey, String clientId) {
+        return generateStory(workflowParams, apiKey, clientId, null, null).join().workflowId();
+    }
+
+    /**
+     * Starts a story workflow, and waits until the story reaches a given stage.
+     * The workflow is started along with the update waiting for the stage, in a
+     * single call to Temporal.
+     *
+     * @param stage   the stage to wait for, <code>null</code> to return as soon as the workflow is started
+     * @param timeout how long to wait for the stage, including the time it takes a worker to accept the request
+     * @return the story if the stage was reached in time, the current state of the workflow otherwise:
+     *         the result completes asynchronously when waiting for a stage, without holding the calling thread
+     */
+    CompletableFuture<NewStory> generateStory(StoryWorkflow.StoryParams workflowParams, String apiKey, String clientId,
+                                              StoryWorkflow.Stage stage, Duration timeout) {
+        // A pooled story is ready right away, and does not add any load to Temporal.
+        // Pooled stories are short, and have a single edition.
+        final var fear = workflowParams.fear();
+        final var language = workflowParams.language();
+        storyPool.recordRequest(fear, language);
+        final var poolable = workflowParams.translations().isEmpty() && workflowParams.chapters() == 1;
+        var charged = false;
+        if (poolable) {
+            // A claimed story cannot be given back: the quota is checked first.
+            charged = clientQuota.acquire(clientId);
+            final var pooledStory = storyPool.claim(workflowParams.characterName(), fear, language);
+            if (pooledStory.isPresent()) {
+                final var storyId = UUID.randomUUID().toString();
+                logger.info("Using pooled story for id {}: fear={} language={}", storyId, fear, language);
+                // The pooled text was approved by moderation, and the name was checked when claiming it.
+                storyRepository.saveModeration(storyId, new ModerationVerdict(true, List.of()));
+                storyRepository.saveEditions(storyId, Map.of(language, pooledStory.get()));
+                storyRepository.saveStory(storyId, pooledStory.get());
+                return CompletableFuture.completedFuture(
+                        new NewStory(storyId, StoryWorkflowState.COMPLETED, pooledStory.get()));
+            }
+        }
+
+        // Shed load before starting anything: a story started on an overloaded
+        // system would only be ready minutes later.
+        final StoryAdmissionControl.Lane lane;
+        try {
+            lane = admissionControl.admit(apiKey);
+        } catch (TooManyRequestsException e) {
+            if (charged) {
+                // Callers are only charged for stories they get.
+                clientQuota.refund(clientId);
+            }
+            throw e;
+        }
+        if (!poolable) {
+            clientQuota.acquire(clientId);
+        }
+
         final var workflowId = UUID.randomUUID().toString();
         final var workflowOptions = WorkflowOptions.newBuilder()
                 .setTaskQueue("story-tasks")
                 .setWorkflowId(getStoryWorkflowId(workflowId))
+                .setPriority(lane.toPriority())
+                // Workflow IDs are unique: starting a workflow never joins an existing one.
+                .setWorkflowIdConflictPolicy(WorkflowIdConflictPolicy.WORKFLOW_ID_CONFLICT_POLICY_FAIL)
                 .build();
 
         logger.debug("Looking up workflow with id {}", workflowId);
         final var workflow = workflowClient.newWorkflowStub(StoryWorkflow.class, workflowOptions);
 
-        final var workflowParams = new StoryWorkflow.StoryParams(characterName, fear, language);
-        logger.info("Starting story workflow with id {}: params={}", workflowId, workflowParams);
-        WorkflowClient.start(workflow::createStory, workflowParams);
-        return workflowId;
+        if (stage == null) {
+            logger.info("Starting story workflow with id {}: params={} lane={}", workflowId, workflowParams, lane);
+            WorkflowClient.start(workflow::createStory, workflowParams);
+            return CompletableFuture.completedFuture(new NewStory(workflowId, null, null));
+        }
+
+        logger.info("Starting story workflow with id {} and waiting for stage {}: params={} lane={}",
+                workflowId, stage, workflowParams, lane);
+        final var deadline = System.nanoTime() + timeout.toNanos();
+        // The update is only sent back once a worker accepted it, which may take longer
+        // than the timeout when workers are busy: the caller does not wait for it.
+        final var started = CompletableFuture.supplyAsync(() -> WorkflowClient.startUpdateWithStart(
+                workflow::waitForStage, stage,
+                UpdateOptions.<StoryWorkflow.StageResult>newBuilder()
+                        .setWaitForStage(WorkflowUpdateStage.ACCEPTED)
+                        .build(),
+                new WithStartWorkflowOperation<>(workflow::createStory, workflowParams)), executor);
+        started.whenComplete((update, e) -> {
+            if (e != null) {
+                // The caller may not be waiting anymore.
+                logger.warn("Unable to start story workflow {}", workflowId, e);
+            }
+        });
+        return started
+                .thenCompose(update -> update.getResultAsync(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS))
+                .thenApply(result -> new NewStory(workflowId, result.state(), result.story()))
+                .completeOnTimeout(null, timeout.toNanos(), TimeUnit.NANOSECONDS)
+                .handle((created, e) -> {
+                    final var cause = e instanceof CompletionException ? e.getCause() : e;
+                    if (cause == null || cause instanceof WorkflowUpdateTimeoutOrCancelledException) {
+                        if (created == null) {
+                            logger.debug("Story workflow {} did not reach stage {} within {}", workflowId, stage, timeout);
+                        }
+                        return created;
+                    }
+                    if (cause instanceof WorkflowUpdateException) {
+                        // The update fails when the workflow is cancelled while waiting.
+                        logger.debug("Story workflow {} ended before reaching stage {}", workflowId, stage, cause);
+                        return null;
+                    }
+                    throw e instanceof CompletionException ce ? ce : new CompletionException(e);
+                })
+                // The caller can still poll the workflow.
+                .thenCompose(created -> created != null ? CompletableFuture.completedFuture(created) : getCurrentState(workflowId));
+    }
+
+    private CompletableFuture<NewStory> getCurrentState(String workflowId) {
+        // Queries are answered by workers: busy workers may not answer in time.
+        return CompletableFuture.supplyAsync(() -> new NewStory(workflowId, getStatus(workflowId).state(), null), executor)
+                .completeOnTimeout(new NewStory(workflowId, StoryWorkflowState.INITIALIZING, null),
+                        STATUS_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
     }
 
-    StoryWorkflowState getState(String workflowId) {
+    /**
+     * Gets the state of a story workflow, along with time estimates.
+     */
+    StoryStatus getStatus(String workflowId) {
         final var untypedStub = workflowClient.newUntypedWorkflowStub(getStoryWorkflowId(workflowId));
-        return untypedStub.query("getState", StoryWorkflowState.class);
+        final var progress = untypedStub.query("getProgress", StoryWorkflow.Progress.class);
+        final var transitions = progress.transitions();
+        if (transitions.isEmpty()) {
+            return new StoryStatus(progress.state(), -1, -1);
+        }
+        final var stepElapsed = Math.max(0,
+                System.currentTimeMillis() - transitions.get(transitions.size() - 1).timestamp());
+        return new StoryStatus(progress.state(), stepElapsed,
+                stepLatencies.estimateRemainingMillis(transitions, stepElapsed));
+    }
+
+    /**
+     * Requests the cancellation of a story workflow.
+     * Running activities are notified on their next heartbeat and abort their AI calls.
+     *
+     * @return <code>false</code> if there is no running workflow with this ID
+     */
+    boolean cancelStory(String workflowId) {
+        final var untypedStub = workflowClient.newUntypedWorkflowStub(getStoryWorkflowId(workflowId));
+        try {
+            logger.info("Cancelling story workflow with id {}", workflowId);
+            untypedStub.cancel("Story abandoned by user");
+            return true;
+        } catch (WorkflowNotFoundException e) {
+            logger.debug("Cannot cancel story workflow with id {}: workflow not found", workflowId);
+            return false;
+        }
     }
 
     private String getStoryWorkflowId(String workflowId) {
@@ -64,4 +243,88 @@ class StoryService {
     Optional<Story> getStory(String workflowId) {
         return storyRepository.getStory(workflowId);
     }
+
+    Optional<Story> getStory(String workflowId, String language) {
+        return storyRepository.getStory(workflowId, language);
+    }
+
+    List<String> getLanguages(String workflowId) {
+        return storyRepository.getLanguages(workflowId);
+    }
+
+    /**
+     * @return the chapters of a long story written so far, empty if there are none
+     */
+    Optional<Story> getDraft(String workflowId) {
+        return storyRepository.getDraft(workflowId);
+    }
+
+    /**
+     * Writes all stories as newline-delimited JSON, one batch at a time.
+     * Pooled stories are left out until they are claimed.
+     * <p>
+     * A checkpoint line follows each batch, holding the cursor an interrupted
+     * export can be resumed from. Stories of the batch in progress when the
+     * export was interrupted are written again when resuming.
+     *
+     * @param cursor the cursor to resume the export from, <code>"0"</code> to start from the beginning
+     * @param out    the stream to write to
+     */
+    void exportStories(String cursor, OutputStream out) throws IOException {
+        logger.info("Exporting stories from cursor {}", cursor);
+        var next = cursor;
+        long count = 0;
+        do {
+            final var batch = storyRepository.scanStories(next, EXPORT_BATCH_SIZE);
+            for (final var stored : batch.stories()) {
+                // Pooled stories are templates, without the name of any character.
+                if (stored.id().startsWith(StoryPool.STORY_ID_PREFIX)) {
+                    continue;
+                }
+                final var story = stored.story();
+                writeLine(out, new ExportedStory(stored.id(), story.title(), story.content(), story.cover(), stored.languages()));
+                ++count;
+            }
+            next = batch.cursor();
+            writeLine(out, new ExportCheckpoint(next, next == null));
+            // Blocks while the client is not reading: the scan goes at the pace of the client.
+            out.flush();
+        } while (next != null);
+        logger.info("Exported {} stories from cursor {}", count, cursor);
+    }
+
+    private void writeLine(OutputStream out, Object value) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(value));
+        out.write('\n');
+    }
+
+    /**
+     * A story in an export.
+     */
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    record ExportedStory(String id, String title, String content, StoryCover cover, List<String> languages) {
+    }
+
+    /**
+     * @param cursor the cursor to resume the export from, <code>null</code> once all stories were exported
+     * @param done   whether all stories were exported
+     */
+    record ExportCheckpoint(String cursor, boolean done) {
+    }
+
+    /**
+     * @param workflowId the ID of the story
+     * @param state      the state of the workflow, <code>null</code> if unknown
+     * @param story      the story, <code>null</code> if it is not ready yet
+     */
+    record NewStory(String workflowId, StoryWorkflowState state, Story story) {
+    }
+
+    /**
+     * @param state                    the current state of the workflow
+     * @param stepElapsedMillis        time spent in the current state, <code>-1</code> if unknown
+     * @param estimatedRemainingMillis estimated time before completion, <code>-1</code> if unknown
+     */
+    record StoryStatus(StoryWorkflowState state, long stepElapsedMillis, long estimatedRemainingMillis) {
+    }
 }
@@ -17,21 +17,108 @@
 package io.github.alexandreroman.temporalstory;
 
 import io.temporal.workflow.QueryMethod;
+import io.temporal.workflow.UpdateMethod;
+import io.temporal.workflow.UpdateValidatorMethod;
 import io.temporal.workflow.WorkflowInterface;
 import io.temporal.workflow.WorkflowMethod;
 
+import java.util.List;
+
 @WorkflowInterface
 public interface StoryWorkflow {
+    /**
+     * @return the story; a story rejected by moderation is never saved, and is returned without a cover
+     */
     @WorkflowMethod
     Story createStory(StoryParams params);
 
     @QueryMethod
     StoryWorkflowState getState();
 
+    /**
+     * @return the current state along with the time each state was entered
+     */
+    @QueryMethod
+    Progress getProgress();
+
+    /**
+     * Waits until the story reaches a given stage.
+     * This is meant to be sent along with the start of the workflow, so that
+     * callers get the story without polling the workflow state.
+     *
+     * @param stage the stage to wait for
+     * @return the story once the stage is reached, or the final state of a
+     *         workflow which ended before reaching it
+     */
+    @UpdateMethod
+    StageResult waitForStage(Stage stage);
+
+    @UpdateValidatorMethod(updateName = "waitForStage")
+    void validateWaitForStage(Stage stage);
+
+    /**
+     * Stages of a story callers can wait for.
+     */
+    enum Stage {
+        /**
+         * The text of the story is written and approved by moderation, the cover may not be ready yet.
+         */
+        TEXT,
+        /**
+         * The story is saved along with its cover.
+         */
+        COMPLETED
+    }
+
+    /**
+     * @param state the state of the workflow when the update returned
+     * @param story the story, <code>null</code> if the workflow ended without reaching the stage
+     */
+    record StageResult(StoryWorkflowState state, Story story) {
+    }
+
+    /**
+     * @param characterName the name of the main character
+     * @param fear          the fear to overcome
+     * @param language      the language the story is written in
+     * @param translations  other languages the story is translated to, sharing the same cover
+     * @param chapters      the number of chapters: long stories are written one chapter at a time
+     */
     record StoryParams(
             String characterName,
             String fear,
-            String language
+            String language,
+            List<String> translations,
+            int chapters
     ) {
+        public StoryParams {
+            // Workflows started before translations and chapters were supported have none.
+            translations = translations == null ? List.of() : List.copyOf(translations);
+            chapters = Math.max(1, chapters);
+        }
+
+        public StoryParams(String characterName, String fear, String language, List<String> translations) {
+            this(characterName, fear, language, translations, 1);
+        }
+
+        public StoryParams(String characterName, String fear, String language) {
+            this(characterName, fear, language, List.of());
+        }
+    }
+
+    /**
+     * A state change of the workflow.
+     *
+     * @param state     the new state
+     * @param timestamp when the state was entered (milliseconds since epoch)
+     */
+    record Transition(StoryWorkflowState state, long timestamp) {
+    }
+
+    /**
+     * @param state       the current state
+     * @param transitions all state changes so far, in order
+     */
+    record Progress(StoryWorkflowState state, List<Transition> transitions) {
     }
 }
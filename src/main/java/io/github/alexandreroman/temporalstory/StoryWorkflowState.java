@@ -20,9 +20,14 @@ public enum StoryWorkflowState {
     IDLE,
     INITIALIZING,
     GENERATING_STORY,
+    GENERATING_OUTLINE,
+    GENERATING_CHAPTERS,
     PREPARING_COVER,
     GENERATING_COVER,
+    TRANSLATING,
     SAVING_RESULTS,
     COMPLETED,
-    FAILED
+    FAILED,
+    CANCELLED,
+    REJECTED
 }
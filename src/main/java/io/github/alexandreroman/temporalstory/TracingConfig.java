@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.opentracingshim.OpenTracingShim;
+import io.opentracing.Tracer;
+import io.temporal.common.interceptors.WorkerInterceptor;
+import io.temporal.spring.boot.TemporalOptionsCustomizer;
+import io.temporal.worker.WorkerFactoryOptions;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Connects Temporal to OpenTelemetry.
+ * <p>
+ * Spring Boot traces HTTP requests, Redis commands and Spring AI model calls.
+ * Temporal only supports OpenTracing: the Temporal starter propagates traces from
+ * <code>WorkflowClient.start</code> to workflows and activities through an
+ * OpenTracing shim over the OpenTelemetry SDK. Workers also trace how long tasks
+ * wait in their queue.
+ */
+@Configuration(proxyBeanMethods = false)
+class TracingConfig {
+    // The starter only creates this shim when an OpenTelemetry bean already exists, but
+    // its configuration is evaluated before the one of Spring Boot which creates it.
+    @Bean
+    Tracer openTracingTracer(OpenTelemetry openTelemetry) {
+        return OpenTracingShim.createTracerShim(openTelemetry);
+    }
+
+    @Bean
+    TemporalOptionsCustomizer<WorkerFactoryOptions.Builder> queueWaitTracingCustomizer(OpenTelemetry openTelemetry) {
+        final var queueWaitInterceptor = new QueueWaitTracingInterceptor(openTelemetry.getTracer("temporal-story"));
+        return builder -> {
+            // Temporal wraps interceptors from first to last: putting ours first
+            // makes it run inside the tracing interceptor set up by the starter.
+            final var current = builder.build().getWorkerInterceptors();
+            final var interceptors = new ArrayList<WorkerInterceptor>();
+            interceptors.add(queueWaitInterceptor);
+            if (current != null) {
+                interceptors.addAll(List.of(current));
+            }
+            return builder.setWorkerInterceptors(interceptors.toArray(WorkerInterceptor[]::new));
+        };
+    }
+}
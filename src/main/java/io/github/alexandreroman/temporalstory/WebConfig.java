@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.CacheControl;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.resource.EncodedResourceResolver;
+import org.springframework.web.servlet.resource.PathResourceResolver;
+
+import java.time.Duration;
+
+/**
+ * Serves the assets of the frontend build.
+ * <p>
+ * Files under <code>/_nuxt/</code> have a content hash in their name: they
+ * never change, and browsers can cache them forever. The manifest pointing to
+ * the latest build is the exception, and is revalidated. Gzip and brotli variants
+ * are generated by the frontend build, and picked according to the
+ * <code>Accept-Encoding</code> header of the request.
+ */
+@Configuration(proxyBeanMethods = false)
+@Profile("!worker")
+class WebConfig implements WebMvcConfigurer {
+    @Override
+    public void addResourceHandlers(ResourceHandlerRegistry registry) {
+        // Clients check latest.json to find out whether a new version was deployed:
+        // only the metadata of each build, under meta/, is named after its content.
+        registry.addResourceHandler("/_nuxt/builds/*.json")
+                .addResourceLocations("classpath:/static/_nuxt/builds/")
+                .setCacheControl(CacheControl.noCache());
+        registry.addResourceHandler("/_nuxt/**")
+                .addResourceLocations("classpath:/static/_nuxt/")
+                .setCacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable())
+                .resourceChain(true)
+                .addResolver(new EncodedResourceResolver())
+                .addResolver(new PathResourceResolver());
+    }
+}
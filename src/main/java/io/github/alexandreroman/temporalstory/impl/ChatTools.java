@@ -17,6 +17,7 @@
 package io.github.alexandreroman.temporalstory.impl;
 
 import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
@@ -24,6 +25,7 @@ import java.time.Year;
 import java.time.format.DateTimeFormatter;
 
 @Component
+@Profile("!api")
 class ChatTools {
     @Tool(description = "Get current year")
     public int getCurrentYear() {
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory.impl;
+
+import io.opentelemetry.context.Context;
+import io.temporal.activity.Activity;
+import io.temporal.client.ActivityCompletionException;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs a blocking call (such as an AI model request) from an activity while
+ * heartbeating to Temporal.
+ * <p>
+ * Heartbeats are the only way for an activity to learn that its workflow has
+ * been cancelled: when this happens, the thread running the call is interrupted,
+ * which aborts the underlying HTTP request and frees the worker slot.
+ * The tracing context of the activity is propagated to the call thread.
+ */
+final class HeartbeatingCall {
+    private static final long HEARTBEAT_PERIOD_MILLIS = 1000;
+    private static final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private HeartbeatingCall() {
+    }
+
+    /**
+     * Executes a call on behalf of the current activity.
+     *
+     * @param call the blocking call to execute
+     * @param <T>  the type of the call result
+     * @return the call result
+     * @throws ActivityCompletionException if the activity was cancelled while the call was running
+     */
+    static <T> T run(Supplier<T> call) {
+        final var ctx = Activity.getExecutionContext();
+        final var future = executor.submit(Context.current().wrap(call::get));
+        try {
+            while (true) {
+                try {
+                    return future.get(HEARTBEAT_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // Heartbeats are throttled by the SDK: calling this often is cheap.
+                    ctx.heartbeat(null);
+                }
+            }
+        } catch (ActivityCompletionException e) {
+            future.cancel(true);
+            throw e;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw Activity.wrap(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw Activity.wrap(e.getCause());
+        }
+    }
+}
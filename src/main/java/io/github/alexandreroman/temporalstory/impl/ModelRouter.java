@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory.impl;
+
+import io.github.alexandreroman.temporalstory.AppConfig;
+import io.opentelemetry.context.Context;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Routes AI model calls across several models in order to cut tail latency.
+ * <p>
+ * Each call goes to the preferred model, unless its rolling error rate is too
+ * high or it has become much slower than another model. When a call takes
+ * longer than the observed p95 latency of its model, a hedged request is sent
+ * to the next model: the first response wins, and the other request is
+ * cancelled. Hedged requests are limited to a fraction of all calls, so that
+ * a global slowdown does not double the cost of AI calls.
+ * <p>
+ * Statistics are tracked per operation, since a story and a cover prompt have
+ * very different latencies even with the same model.
+ */
+@Component
+@Profile("!api")
+class ModelRouter {
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private static final long MAX_LATENCY_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final double MAX_HEDGE_BUDGET = 10;
+    private static final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Logger logger = LoggerFactory.getLogger(ModelRouter.class);
+    private final AppConfig.Routing config;
+    private final Map<String, ModelStats> stats = new ConcurrentHashMap<>();
+    private double hedgeBudget;
+
+    ModelRouter(AppConfig config) {
+        this.config = config.routing();
+    }
+
+    /**
+     * Runs a call against the configured chat models.
+     *
+     * @param operation the name of the operation, used to track latencies
+     * @param call      the call to run, given the name of the model to use
+     *                  (<code>null</code> to use the default model)
+     * @param <T>       the type of the call result
+     * @return the result of the first successful call
+     */
+    <T> T chat(String operation, Function<String, T> call) {
+        return route(operation, config.chatModels(), call);
+    }
+
+    /**
+     * Runs a call against the configured image models.
+     *
+     * @see #chat(String, Function)
+     */
+    <T> T image(String operation, Function<String, T> call) {
+        return route(operation, config.imageModels(), call);
+    }
+
+    <T> T route(String operation, List<String> models, Function<String, T> call) {
+        if (models.isEmpty()) {
+            return call.apply(null);
+        }
+        final var candidates = rank(operation, models);
+        final var hedgeDelayMillis = candidates.size() > 1 ? statsOf(operation, candidates.getFirst()).p95() : -1;
+        earnHedgeBudget();
+
+        final var ctx = Context.current();
+        final var done = new AtomicBoolean();
+        final var completion = new ExecutorCompletionService<T>(executor);
+        final var futures = new ArrayList<Future<T>>(candidates.size());
+        final var startedAt = System.nanoTime();
+        RuntimeException error = null;
+        int next = 0;
+        int pending = 0;
+        boolean hedged = false;
+        try {
+            while (true) {
+                if (pending == 0) {
+                    if (next == candidates.size()) {
+                        throw error;
+                    }
+                    // Nothing running: this is the first attempt, or a fallback after errors.
+                    futures.add(completion.submit(ctx.wrap(attempt(operation, candidates.get(next++), call, done))));
+                    ++pending;
+                }
+
+                final Future<T> future;
+                if (!hedged && next < candidates.size() && hedgeDelayMillis >= 0) {
+                    final var waitMillis = hedgeDelayMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+                    future = completion.poll(Math.max(0, waitMillis), TimeUnit.MILLISECONDS);
+                    if (future == null) {
+                        hedged = true;
+                        if (spendHedgeBudget()) {
+                            final var model = candidates.get(next++);
+                            logger.debug("Hedging {} call to model {} after {} ms", operation, model, hedgeDelayMillis);
+                            futures.add(completion.submit(ctx.wrap(attempt(operation, model, call, done))));
+                            ++pending;
+                        }
+                        continue;
+                    }
+                } else {
+                    future = completion.take();
+                }
+
+                --pending;
+                try {
+                    return future.get();
+                } catch (ExecutionException e) {
+                    final var cause = e.getCause() instanceof RuntimeException re ? re : new IllegalStateException(e.getCause());
+                    if (error != null) {
+                        cause.addSuppressed(error);
+                    }
+                    error = cause;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Model call interrupted");
+        } finally {
+            // Losing and pending requests are cancelled, which aborts their HTTP call.
+            done.set(true);
+            futures.forEach(f -> f.cancel(true));
+        }
+    }
+
+    private <T> Callable<T> attempt(String operation, String model, Function<String, T> call, AtomicBoolean done) {
+        final var modelStats = statsOf(operation, model);
+        return () -> {
+            final var startedAt = System.nanoTime();
+            try {
+                final var result = call.apply(model);
+                modelStats.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt), true);
+                return result;
+            } catch (RuntimeException e) {
+                // Cancelled requests do not tell anything about the model.
+                if (!done.get()) {
+                    logger.warn("Model {} failed for {} call", model, operation, e);
+                    modelStats.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt), false);
+                }
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * Sorts models by order of use: healthy models come first in order of
+     * preference, unless the preferred one is much slower than the fastest one.
+     */
+    List<String> rank(String operation, List<String> models) {
+        final var healthy = new ArrayList<String>(models.size());
+        final var unhealthy = new ArrayList<String>();
+        for (final var model : models) {
+            (statsOf(operation, model).errorRate() > config.maxErrorRate() ? unhealthy : healthy).add(model);
+        }
+        unhealthy.sort(Comparator.comparingDouble(model -> statsOf(operation, model).errorRate()));
+
+        if (healthy.size() > 1) {
+            final var preferredP95 = statsOf(operation, healthy.getFirst()).p95();
+            healthy.stream()
+                    .filter(model -> statsOf(operation, model).p95() >= 0)
+                    .min(Comparator.comparingLong(model -> statsOf(operation, model).p95()))
+                    .filter(fastest -> preferredP95 > statsOf(operation, fastest).p95() * config.latencyTolerance())
+                    .ifPresent(fastest -> {
+                        healthy.remove(fastest);
+                        healthy.addFirst(fastest);
+                    });
+        }
+        healthy.addAll(unhealthy);
+        return healthy;
+    }
+
+    private ModelStats statsOf(String operation, String model) {
+        return stats.computeIfAbsent(operation + ":" + model, k -> new ModelStats());
+    }
+
+    private synchronized void earnHedgeBudget() {
+        hedgeBudget = Math.min(MAX_HEDGE_BUDGET, hedgeBudget + config.maxHedgeRatio());
+    }
+
+    private synchronized boolean spendHedgeBudget() {
+        if (hedgeBudget < 1) {
+            return false;
+        }
+        hedgeBudget -= 1;
+        return true;
+    }
+
+    /**
+     * Rolling latency and error statistics of a model for an operation.
+     */
+    private final class ModelStats {
+        // Statistics cover between half a window and a full window of calls.
+        private final Histogram currentLatencies = new Histogram(SIGNIFICANT_DIGITS);
+        private final Histogram previousLatencies = new Histogram(SIGNIFICANT_DIGITS);
+        private long currentErrors;
+        private long previousErrors;
+        private long windowStartedAt = System.nanoTime();
+
+        synchronized void record(long latencyMillis, boolean success) {
+            rotate();
+            if (success) {
+                currentLatencies.recordValue(Math.min(latencyMillis, MAX_LATENCY_MILLIS));
+            } else {
+                ++currentErrors;
+            }
+        }
+
+        /**
+         * @return the p95 latency in milliseconds, or <code>-1</code> if unknown
+         */
+        synchronized long p95() {
+            rotate();
+            final var latencies = currentLatencies.copy();
+            latencies.add(previousLatencies);
+            return latencies.getTotalCount() < config.minSamples() ? -1 : latencies.getValueAtPercentile(95);
+        }
+
+        /**
+         * @return the error rate, or <code>0</code> if unknown
+         */
+        synchronized double errorRate() {
+            rotate();
+            final var errors = currentErrors + previousErrors;
+            final var calls = errors + currentLatencies.getTotalCount() + previousLatencies.getTotalCount();
+            return calls < config.minSamples() ? 0 : (double) errors / calls;
+        }
+
+        private void rotate() {
+            if (System.nanoTime() - windowStartedAt > config.window().toNanos() / 2) {
+                previousLatencies.reset();
+                previousLatencies.add(currentLatencies);
+                currentLatencies.reset();
+                previousErrors = currentErrors;
+                currentErrors = 0;
+                windowStartedAt = System.nanoTime();
+            }
+        }
+    }
+}
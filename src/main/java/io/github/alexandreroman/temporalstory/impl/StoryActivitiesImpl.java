@@ -26,25 +26,42 @@ import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.image.ImageModel;
 import org.springframework.ai.image.ImagePrompt;
+import org.springframework.ai.moderation.Categories;
+import org.springframework.ai.moderation.ModerationModel;
+import org.springframework.ai.moderation.ModerationPrompt;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.OpenAiImageOptions;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 
 @Component
+@Profile("!api")
 @ActivityImpl(taskQueues = "story-tasks")
 class StoryActivitiesImpl implements StoryActivities {
     private final ChatClient.Builder chatClientBuilder;
     private final ImageModel imageModel;
+    private final ModerationModel moderationModel;
+    private final ModelRouter modelRouter;
     private final ChatTools tools;
     private final StoryRepository storyRepository;
+    private final StepLatencies stepLatencies;
     private final AppConfig config;
     private final Logger logger = LoggerFactory.getLogger(StoryActivitiesImpl.class);
 
-    StoryActivitiesImpl(ChatClient.Builder chatClientBuilder, ImageModel imageModel, ChatTools tools, StoryRepository storyRepository, AppConfig config) {
+    StoryActivitiesImpl(ChatClient.Builder chatClientBuilder, ImageModel imageModel, ModerationModel moderationModel, ModelRouter modelRouter, ChatTools tools, StoryRepository storyRepository, StepLatencies stepLatencies, AppConfig config) {
         this.chatClientBuilder = chatClientBuilder;
         this.imageModel = imageModel;
+        this.moderationModel = moderationModel;
+        this.modelRouter = modelRouter;
         this.tools = tools;
         this.storyRepository = storyRepository;
+        this.stepLatencies = stepLatencies;
         this.config = config;
     }
 
@@ -53,7 +70,7 @@ class StoryActivitiesImpl implements StoryActivities {
         logger.info("Generating story: characterName={} fear={} language={}", characterName, fear, language);
 
         final var chat = chatClientBuilder.build();
-        final var resp = chat.prompt().system(p -> p.text("""
+        final var resp = HeartbeatingCall.run(() -> modelRouter.chat("generateStory", model -> chat.prompt().system(p -> p.text("""
                                 # ROLE
                                 You are a world-class children's storyteller and bibliotherapist.
                                 You specialize in creating empowering, magical, and safe stories for children aged 3 to 7.
@@ -68,6 +85,7 @@ class StoryActivitiesImpl implements StoryActivities {
                                 4. LANGUAGE: You MUST write the story entirely in {language}.
                                 5. CONSTRAINTS: No conversational filler. Output ONLY the story text.
                                 6. ENDING: Always end with a one-sentence positive moral or takeaway in {language}.
+                                7. NAMES: Always write the name of the main character exactly as given, even if it looks unusual.
                                 """)
                         .param("language", language))
                 .user(p -> p.text("""
@@ -81,19 +99,216 @@ class StoryActivitiesImpl implements StoryActivities {
                         .param("characterName", characterName)
                         .param("fear", fear)
                         .param("language", language))
+                .options(OpenAiChatOptions.builder().model(model).build())
                 .advisors(AdvisorParams.ENABLE_NATIVE_STRUCTURED_OUTPUT)
                 .tools(tools)
                 .call()
-                .entity(StoryResponse.class);
+                .entity(StoryResponse.class)));
         return new Story(resp.storyTitle, resp.storyText, null);
     }
 
+    @Override
+    public StoryOutline generateOutline(String characterName, String fear, String language, int chapters) {
+        logger.info("Generating story outline: characterName={} fear={} language={} chapters={}",
+                characterName, fear, language, chapters);
+
+        final var chat = chatClientBuilder.build();
+        final var resp = HeartbeatingCall.run(() -> modelRouter.chat("generateOutline", model -> chat.prompt().system(p -> p.text("""
+                                # ROLE
+                                You are a world-class children's storyteller and bibliotherapist.
+                                You specialize in creating empowering, magical, and safe stories for children aged 3 to 7.
+
+                                # RULES
+                                1. TONE: Gentle, whimsical, and encouraging.
+                                2. SAFETY: Never include violence, frightening descriptions, or permanent danger.
+                                3. STRUCTURE: Plan exactly {chapters} chapters following a 3-act structure:
+                                   the first chapters introduce the hero and their daily life, the middle chapters
+                                   bring a gentle encounter with the specified fear in a magical setting, and the
+                                   last chapter shows a creative and brave resolution where the hero overcomes the fear.
+                                4. LANGUAGE: You MUST write the titles and summaries entirely in {language}.
+                                5. CONSTRAINTS: No conversational filler. Each summary is 2 or 3 sentences long,
+                                   and names the characters and places involved in the chapter.
+                                6. NAMES: Always write the name of the main character exactly as given, even if it looks unusual.
+                                """)
+                        .param("chapters", chapters)
+                        .param("language", language))
+                .user(p -> p.text("""
+                                Please write the outline of a story in {language} with the following parameters:
+
+                                - MAIN CHARACTER: {characterName}
+                                - FEAR TO OVERCOME: {fear}
+                                - NUMBER OF CHAPTERS: {chapters}
+
+                                The story should show {characterName} that {fear} is not as scary as it seems when approached with courage and imagination.
+                                """)
+                        .param("characterName", characterName)
+                        .param("fear", fear)
+                        .param("chapters", chapters)
+                        .param("language", language))
+                .options(OpenAiChatOptions.builder().model(model).build())
+                .advisors(AdvisorParams.ENABLE_NATIVE_STRUCTURED_OUTPUT)
+                .tools(tools)
+                .call()
+                .entity(OutlineResponse.class)));
+        if (resp.chapters == null || resp.chapters.isEmpty()) {
+            // The activity is retried: a story cannot be written without any chapter.
+            throw new IllegalStateException("Generated story outline has no chapters");
+        }
+        // Chapters are written from the outline: never write more than requested.
+        return new StoryOutline(resp.storyTitle, resp.chapters.stream()
+                .limit(chapters)
+                .map(c -> new StoryOutline.Chapter(c.chapterTitle, c.summary))
+                .toList());
+    }
+
+    @Override
+    public String generateChapter(StoryOutline outline, int index, String characterName, String language) {
+        logger.info("Generating chapter {}: outline={} characterName={} language={}", index, outline, characterName, language);
+
+        final var chapters = outline.chapters();
+        final var outlineText = new StringBuilder();
+        for (int i = 0; i < chapters.size(); ++i) {
+            outlineText.append(i + 1).append(". ").append(chapters.get(i).title())
+                    .append(": ").append(chapters.get(i).summary()).append('\n');
+        }
+        final var last = index == chapters.size() - 1;
+
+        final var chat = chatClientBuilder.build();
+        final var resp = HeartbeatingCall.run(() -> modelRouter.chat("generateChapter", model -> chat.prompt().system(p -> p.text("""
+                                # ROLE
+                                You are a world-class children's storyteller and bibliotherapist.
+                                You specialize in creating empowering, magical, and safe stories for children aged 3 to 7.
+
+                                # RULES
+                                1. TONE: Gentle, whimsical, and encouraging.
+                                2. SAFETY: Never include violence, frightening descriptions, or permanent danger.
+                                3. CONTINUITY: Other chapters are written at the same time by other storytellers.
+                                   Only write the requested chapter, sticking to its summary, and do not tell
+                                   what happens in the other chapters of the outline.
+                                4. LANGUAGE: You MUST write the chapter entirely in {language}.
+                                5. CONSTRAINTS: No conversational filler. Output ONLY the chapter text, without its title.
+                                6. ENDING: {ending}
+                                7. NAMES: Always write the name of the main character exactly as given, even if it looks unusual.
+                                """)
+                        .param("language", language)
+                        .param("ending", last
+                                ? "End the chapter with a one-sentence positive moral or takeaway in " + language + "."
+                                : "End the chapter so that it leads to the next one, without any moral."))
+                .user(p -> p.text("""
+                                Here is the outline of the story "{title}", whose main character is {characterName}:
+
+                                <OUTLINE>
+                                {outline}
+                                </OUTLINE>
+
+                                Please write chapter {number} ("{chapterTitle}") in {language}.
+                                """)
+                        .param("title", outline.title())
+                        .param("characterName", characterName)
+                        .param("outline", outlineText.toString())
+                        .param("number", index + 1)
+                        .param("chapterTitle", chapters.get(index).title())
+                        .param("language", language))
+                .options(OpenAiChatOptions.builder().model(model).build())
+                .advisors(AdvisorParams.ENABLE_NATIVE_STRUCTURED_OUTPUT)
+                .tools(tools)
+                .call()
+                .entity(ChapterResponse.class)));
+        return resp.chapterText;
+    }
+
+    @Override
+    public Story translateStory(Story story, String fromLanguage, String toLanguage) {
+        logger.info("Translating story: story={} fromLanguage={} toLanguage={}", story, fromLanguage, toLanguage);
+
+        final var chat = chatClientBuilder.build();
+        final var resp = HeartbeatingCall.run(() -> modelRouter.chat("translateStory", model -> chat.prompt().system(p -> p.text("""
+                        # ROLE
+                        You are a literary translator specialized in children's books.
+
+                        # RULES
+                        1. Translate the title and the story provided inside the <STORY_TITLE> and <STORY_CONTENT> tags to {toLanguage}.
+                        2. TONE: Keep the gentle and whimsical tone of the original, using words a child aged 3 to 7 understands.
+                        3. NAMES: Keep the names of the characters exactly as written in the original.
+                        4. CONSTRAINTS: No conversational filler. Do not add or remove anything from the story.
+                        """)
+                        .param("toLanguage", toLanguage))
+                .user(p -> p.text("""
+                                Please translate this story from {fromLanguage} to {toLanguage}:
+
+                                <STORY_TITLE>
+                                {title}
+                                </STORY_TITLE>
+
+                                <STORY_CONTENT>
+                                {story}
+                                </STORY_CONTENT>
+                                """)
+                        .param("title", story.title())
+                        .param("story", story.content())
+                        .param("fromLanguage", fromLanguage)
+                        .param("toLanguage", toLanguage))
+                .options(OpenAiChatOptions.builder().model(model).build())
+                .advisors(AdvisorParams.ENABLE_NATIVE_STRUCTURED_OUTPUT)
+                .call()
+                .entity(StoryResponse.class)));
+        return new Story(resp.storyTitle, resp.storyText, null);
+    }
+
+    @Override
+    public ModerationVerdict moderateStory(Story story) {
+        logger.info("Moderating story: title={}", story.title());
+
+        final var resp = HeartbeatingCall.run(() ->
+                moderationModel.call(new ModerationPrompt(story.title() + "\n\n" + story.content())));
+        final var categories = new LinkedHashSet<String>();
+        var flagged = false;
+        for (final var result : resp.getResult().getOutput().getResults()) {
+            if (result.isFlagged()) {
+                flagged = true;
+                categories.addAll(flaggedCategories(result.getCategories()));
+            }
+        }
+        final var verdict = new ModerationVerdict(!flagged, new ArrayList<>(categories));
+        if (flagged) {
+            logger.warn("Story rejected by moderation: title={} categories={}", story.title(), verdict.categories());
+        }
+        return verdict;
+    }
+
+    private static List<String> flaggedCategories(Categories categories) {
+        if (categories == null) {
+            return List.of();
+        }
+        final var all = new LinkedHashMap<String, Boolean>();
+        all.put("sexual", categories.isSexual());
+        all.put("sexual/minors", categories.isSexualMinors());
+        all.put("hate", categories.isHate());
+        all.put("hate/threatening", categories.isHateThreatening());
+        all.put("harassment", categories.isHarassment());
+        all.put("harassment/threatening", categories.isHarassmentThreatening());
+        all.put("self-harm", categories.isSelfHarm());
+        all.put("self-harm/intent", categories.isSelfHarmIntent());
+        all.put("self-harm/instructions", categories.isSelfHarmInstructions());
+        all.put("violence", categories.isViolence());
+        all.put("violence/graphic", categories.isViolenceGraphic());
+        all.put("illicit", categories.isDangerousAndCriminalContent());
+        return all.entrySet().stream().filter(Map.Entry::getValue).map(Map.Entry::getKey).toList();
+    }
+
+    @Override
+    public void saveModeration(ModerationVerdict verdict) {
+        logger.info("Saving moderation verdict: {}", verdict);
+        final var workflowId = Activity.getExecutionContext().getInfo().getWorkflowId().replace("story-", "");
+        storyRepository.saveModeration(workflowId, verdict);
+    }
+
     @Override
     public String generateCoverPrompt(Story story, String language) {
         logger.info("Generating cover prompt: story={} language={}", story, language);
 
         final var chat = chatClientBuilder.build();
-        final var resp = chat.prompt().system(p -> p.text("""
+        final var resp = HeartbeatingCall.run(() -> modelRouter.chat("generateCoverPrompt", model -> chat.prompt().system(p -> p.text("""
                         # ROLE
                         You are a visual prompt engineer for DALL-E 3.
                         Your goal is to transform a story into a powerful, single-paragraph image generation prompt in ENGLISH.
@@ -119,10 +334,11 @@ class StoryActivitiesImpl implements StoryActivities {
                                 """)
                         .param("story", story.content())
                         .param("language", language))
+                .options(OpenAiChatOptions.builder().model(model).build())
                 .advisors(AdvisorParams.ENABLE_NATIVE_STRUCTURED_OUTPUT)
                 .tools(tools)
                 .call()
-                .entity(CoverPromptResponse.class);
+                .entity(CoverPromptResponse.class)));
         return resp.prompt;
     }
 
@@ -144,7 +360,8 @@ class StoryActivitiesImpl implements StoryActivities {
                 "prompt", prompt
         ));
 
-        final var resp = imageModel.call(new ImagePrompt(finalPrompt));
+        final var resp = HeartbeatingCall.run(() -> modelRouter.image("generateCover", model ->
+                imageModel.call(new ImagePrompt(finalPrompt, OpenAiImageOptions.builder().model(model).build()))));
         return new StoryCover(resp.getResult().getOutput().getUrl(), config.story().cover().width(), config.story().cover().height());
     }
 
@@ -155,9 +372,38 @@ class StoryActivitiesImpl implements StoryActivities {
         storyRepository.saveStory(workflowId, story);
     }
 
+    @Override
+    public void saveChapter(String title, int index, String content) {
+        logger.info("Saving chapter {}: title={}", index, title);
+        final var workflowId = Activity.getExecutionContext().getInfo().getWorkflowId().replace("story-", "");
+        storyRepository.saveChapter(workflowId, title, index, content);
+    }
+
+    @Override
+    public void saveEditions(Map<String, Story> editions) {
+        logger.info("Saving story editions: {}", editions.keySet());
+        final var workflowId = Activity.getExecutionContext().getInfo().getWorkflowId().replace("story-", "");
+        storyRepository.saveEditions(workflowId, editions);
+    }
+
+    @Override
+    public void recordStepLatencies(List<StoryWorkflow.Transition> transitions) {
+        logger.debug("Recording step latencies: {}", transitions);
+        stepLatencies.record(transitions);
+    }
+
     private record StoryResponse(String storyTitle, String storyText) {
     }
 
     private record CoverPromptResponse(String prompt) {
     }
+
+    private record OutlineResponse(String storyTitle, List<ChapterOutlineResponse> chapters) {
+    }
+
+    private record ChapterOutlineResponse(String chapterTitle, String summary) {
+    }
+
+    private record ChapterResponse(String chapterText) {
+    }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory.impl;
+
+import io.github.alexandreroman.temporalstory.StoryPool;
+import io.github.alexandreroman.temporalstory.StoryPoolActivities;
+import io.temporal.spring.boot.ActivityImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+@Profile("!api")
+@ActivityImpl(taskQueues = "story-tasks")
+class StoryPoolActivitiesImpl implements StoryPoolActivities {
+    private final StoryPool storyPool;
+    private final Logger logger = LoggerFactory.getLogger(StoryPoolActivitiesImpl.class);
+
+    StoryPoolActivitiesImpl(StoryPool storyPool) {
+        this.storyPool = storyPool;
+    }
+
+    @Override
+    public List<StoryPool.Refill> planRefill() {
+        final var refills = storyPool.planRefill();
+        logger.info("Planned story pool refill: {}", refills);
+        return refills;
+    }
+
+    @Override
+    public void addToPool(String storyId, String fear, String language) {
+        logger.debug("Adding story {} to pool: fear={} language={}", storyId, fear, language);
+        storyPool.add(storyId, fear, language);
+    }
+
+    @Override
+    public void discardStory(String storyId) {
+        logger.debug("Discarding pooled story {}", storyId);
+        storyPool.discard(storyId);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory.impl;
+
+import io.github.alexandreroman.temporalstory.Story;
+import io.github.alexandreroman.temporalstory.StoryPool;
+import io.github.alexandreroman.temporalstory.StoryPoolActivities;
+import io.github.alexandreroman.temporalstory.StoryPoolWorkflow;
+import io.github.alexandreroman.temporalstory.StoryWorkflow;
+import io.temporal.activity.ActivityOptions;
+import io.temporal.common.Priority;
+import io.temporal.common.RetryOptions;
+import io.temporal.failure.ActivityFailure;
+import io.temporal.failure.ChildWorkflowFailure;
+import io.temporal.spring.boot.WorkflowImpl;
+import io.temporal.workflow.Async;
+import io.temporal.workflow.ChildWorkflowOptions;
+import io.temporal.workflow.Promise;
+import io.temporal.workflow.Workflow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+
+/**
+ * Implementation of the story pool refill workflow.
+ * Pooled stories go through the regular story workflow, with a placeholder
+ * as the name of the main character and the lowest priority, so that user
+ * requests are always served first.
+ */
+@WorkflowImpl(taskQueues = "story-tasks")
+public class StoryPoolWorkflowImpl implements StoryPoolWorkflow {
+    private static final int LOWEST_PRIORITY = 5;
+
+    private final Logger logger = LoggerFactory.getLogger(StoryPoolWorkflowImpl.class);
+    private final StoryPoolActivities poolActivities = Workflow.newActivityStub(
+            StoryPoolActivities.class,
+            ActivityOptions.newBuilder()
+                    .setRetryOptions(RetryOptions.newBuilder().setMaximumAttempts(3).build())
+                    .setStartToCloseTimeout(Duration.ofSeconds(30))
+                    .build());
+
+    @Override
+    public void refill() {
+        final var refills = poolActivities.planRefill();
+        final var pending = new ArrayList<PendingStory>();
+        for (final var refill : refills) {
+            for (int i = 0; i < refill.count(); ++i) {
+                final var storyId = StoryPool.STORY_ID_PREFIX + Workflow.randomUUID();
+                final var child = Workflow.newChildWorkflowStub(StoryWorkflow.class,
+                        ChildWorkflowOptions.newBuilder()
+                                .setWorkflowId("story-" + storyId)
+                                .setPriority(Priority.newBuilder().setPriorityKey(LOWEST_PRIORITY).build())
+                                .build());
+                final var params = new StoryWorkflow.StoryParams(StoryPool.PLACEHOLDER, refill.fear(), refill.language());
+                pending.add(new PendingStory(storyId, refill, Async.function(child::createStory, params)));
+            }
+        }
+
+        int added = 0;
+        for (final var story : pending) {
+            try {
+                final var result = story.result().get();
+                if (result.cover() == null) {
+                    // Rejected by moderation: only the verdict was saved.
+                    logger.info("Pooled story {} rejected by moderation", story.storyId());
+                    poolActivities.discardStory(story.storyId());
+                    continue;
+                }
+                poolActivities.addToPool(story.storyId(), story.refill().fear(), story.refill().language());
+                ++added;
+            } catch (ChildWorkflowFailure | ActivityFailure e) {
+                // Other stories can still make it to the pool.
+                logger.warn("Unable to add story {} to the pool", story.storyId(), e);
+            }
+        }
+        logger.info("Story pool refilled with {} stories out of {}", added, pending.size());
+    }
+
+    private record PendingStory(String storyId, StoryPool.Refill refill, Promise<Story> result) {
+    }
+}
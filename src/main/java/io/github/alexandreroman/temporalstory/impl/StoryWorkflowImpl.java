@@ -16,79 +16,358 @@
 
 package io.github.alexandreroman.temporalstory.impl;
 
+import io.github.alexandreroman.temporalstory.ModerationVerdict;
 import io.github.alexandreroman.temporalstory.Story;
 import io.github.alexandreroman.temporalstory.StoryActivities;
+import io.github.alexandreroman.temporalstory.StoryCover;
 import io.github.alexandreroman.temporalstory.StoryWorkflow;
 import io.github.alexandreroman.temporalstory.StoryWorkflowState;
 import io.temporal.activity.ActivityOptions;
+import io.temporal.activity.LocalActivityOptions;
 import io.temporal.common.RetryOptions;
+import io.temporal.failure.ActivityFailure;
+import io.temporal.failure.CanceledFailure;
 import io.temporal.spring.boot.WorkflowImpl;
+import io.temporal.workflow.Async;
+import io.temporal.workflow.Promise;
 import io.temporal.workflow.Workflow;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Implementation of the Story generation workflow.
  * This workflow orchestrates the steps to create a story: generating text,
  * creating a cover prompt, generating the cover image, and saving the result.
+ * Stories can be translated to several languages: translations run in parallel
+ * with the cover steps, and all editions share the same cover.
+ * <p>
+ * The story text is moderated while the cover is generated: if it is rejected,
+ * the cover and translation steps are cancelled, and the story is never saved.
+ * <p>
+ * Long stories are written from an outline: all chapters are generated in
+ * parallel, and saved in order as soon as they are ready, so that the first
+ * chapters can be read while the next ones are being written. They are translated
+ * chapter by chapter.
+ * <p>
+ * Callers can wait for the story text, or for the complete story, with an
+ * update sent along with the start of the workflow.
  */
 @WorkflowImpl(taskQueues = "story-tasks")
 public class StoryWorkflowImpl implements StoryWorkflow {
+    // Version 1: moderation, translations and cover steps run in parallel, long
+    // stories are written from an outline, and step latencies are recorded.
+    private static final String PARALLEL_STEPS_CHANGE_ID = "parallel-steps";
     private final Logger logger = LoggerFactory.getLogger(StoryWorkflowImpl.class);
     private final StoryActivities storyActivities = Workflow.newActivityStub(
             StoryActivities.class,
             ActivityOptions.newBuilder()
                     .setRetryOptions(RetryOptions.newBuilder().setMaximumAttempts(3).build())
                     .setStartToCloseTimeout(Duration.ofMinutes(2))
+                    // Activities heartbeat while waiting for AI models, so that
+                    // they get notified when the workflow is cancelled.
+                    .setHeartbeatTimeout(Duration.ofSeconds(10))
                     .build());
+    private final StoryActivities localActivities = Workflow.newLocalActivityStub(
+            StoryActivities.class,
+            LocalActivityOptions.newBuilder()
+                    .setRetryOptions(RetryOptions.newBuilder().setMaximumAttempts(1).build())
+                    .setStartToCloseTimeout(Duration.ofSeconds(5))
+                    .build());
+    private final List<Transition> transitions = new ArrayList<>();
     private StoryWorkflowState state = StoryWorkflowState.INITIALIZING;
+    // Stories at each stage callers can wait for.
+    private Story approvedText;
+    private Story completedStory;
 
     @Override
     public Story createStory(StoryParams params) {
         // Extract workflow ID and sanitize it (removing prefix if necessary)
         final var workflowId = Workflow.getInfo().getWorkflowId().replace("story-", "");
         logger.debug("Story workflow {} started: params={}", workflowId, params);
+        setState(workflowId, StoryWorkflowState.INITIALIZING);
         try {
-            return doCreateStory(workflowId, params);
+            final var story = doCreateStory(workflowId, params);
+            awaitStageWaiters();
+            return story;
+        } catch (CanceledFailure e) {
+            setState(workflowId, StoryWorkflowState.CANCELLED);
+            logger.info("Story workflow {} cancelled", workflowId);
+            awaitStageWaiters();
+            throw e;
+        } catch (ActivityFailure e) {
+            if (e.getCause() instanceof CanceledFailure cf) {
+                // Report the workflow as cancelled, not failed.
+                setState(workflowId, StoryWorkflowState.CANCELLED);
+                logger.info("Story workflow {} cancelled", workflowId);
+                awaitStageWaiters();
+                throw cf;
+            }
+            setState(workflowId, StoryWorkflowState.FAILED);
+            logger.warn("Story workflow {} failed", workflowId, e);
+            awaitStageWaiters();
+            throw e;
         } catch (RuntimeException e) {
             setState(workflowId, StoryWorkflowState.FAILED);
             logger.warn("Story workflow {} failed", workflowId, e);
+            awaitStageWaiters();
             throw e;
         }
     }
 
+    /**
+     * Lets callers waiting for a stage get their response before the workflow ends:
+     * their update would fail otherwise.
+     */
+    private void awaitStageWaiters() {
+        // The workflow may be cancelled: waiting must not be cancelled along with it.
+        Workflow.newDetachedCancellationScope(() -> Workflow.await(Workflow::isEveryHandlerFinished)).run();
+    }
+
     private Story doCreateStory(String workflowId, StoryParams params) {
+        // Workflows started before moderation, translations and long stories were
+        // supported run their steps one after the other, as recorded in their history.
+        if (Workflow.getVersion(PARALLEL_STEPS_CHANGE_ID, Workflow.DEFAULT_VERSION, 1) == Workflow.DEFAULT_VERSION) {
+            return doCreateSequentialStory(workflowId, params);
+        }
+
         // Step 1: Generate the story text based on inputs
+        final var text = params.chapters() > 1 ? generateChapters(workflowId, params) : generateStory(workflowId, params);
+        final var storyTextOnly = text.story();
+        if (text.moderation().isCompleted() && !text.moderation().get().approved()) {
+            // Chapters of a long story are moderated while it is written: nothing else is worth generating.
+            return reject(workflowId, text.moderation().get(), storyTextOnly);
+        }
+
+        // Translations and cover steps only need the story text: they run in parallel
+        // with moderation, and are abandoned if the story is rejected.
+        final var translations = new LinkedHashMap<String, Promise<Story>>();
+        final var cover = Workflow.<StoryCover>newPromise();
+        final var generation = Workflow.newCancellationScope(() -> {
+            for (final var language : params.translations()) {
+                translations.put(language, translateStory(text, params.language(), language));
+            }
+            cover.completeFrom(Async.function(this::generateCover, workflowId, storyTextOnly, params.language()));
+        });
+        generation.run();
+
+        // Step 4: Wait for the moderation verdict, which usually comes before the cover
+        final ModerationVerdict verdict;
+        try {
+            verdict = text.moderation().get();
+        } catch (RuntimeException e) {
+            generation.cancel();
+            throw e;
+        }
+        if (!verdict.approved()) {
+            generation.cancel("Story rejected by moderation");
+            return reject(workflowId, verdict, storyTextOnly);
+        }
+        final var verdictSaved = Async.procedure(storyActivities::saveModeration, verdict);
+        approvedText = storyTextOnly;
+
+        // Step 5: Wait for the cover and translations, if they are not done yet
+        final var story = new Story(storyTextOnly.title(), storyTextOnly.content(), cover.get());
+        final var editions = collectEditions(workflowId, params, story, translations);
+
+        // Step 6: Save the complete story (text + image URL)
+        setState(workflowId, StoryWorkflowState.SAVING_RESULTS);
+        // Single-language stories record their language as well.
+        storyActivities.saveEditions(editions);
+        verdictSaved.get();
+        storyActivities.saveStory(story);
+        completedStory = story;
+
+        setState(workflowId, StoryWorkflowState.COMPLETED);
+        recordStepLatencies(workflowId);
+        return story;
+    }
+
+    private Story reject(String workflowId, ModerationVerdict verdict, Story storyTextOnly) {
+        storyActivities.saveModeration(verdict);
+        setState(workflowId, StoryWorkflowState.REJECTED);
+        logger.info("Story workflow {} rejected by moderation: {}", workflowId, verdict.categories());
+        return storyTextOnly;
+    }
+
+    private Story doCreateSequentialStory(String workflowId, StoryParams params) {
         setState(workflowId, StoryWorkflowState.GENERATING_STORY);
         final var storyTextOnly = storyActivities.generateStory(params.characterName(), params.fear(),
                 params.language());
-
-        // Step 2: Generate a prompt for the cover image based on the story content
         setState(workflowId, StoryWorkflowState.PREPARING_COVER);
         final var coverPrompt = storyActivities.generateCoverPrompt(storyTextOnly, params.language());
-
-        // Step 3: Generate the cover image using DALL-E (or similar)
         setState(workflowId, StoryWorkflowState.GENERATING_COVER);
         final var cover = storyActivities.generateCover(coverPrompt);
 
-        // Step 4: Save the complete story (text + image URL)
         setState(workflowId, StoryWorkflowState.SAVING_RESULTS);
         final var story = new Story(storyTextOnly.title(), storyTextOnly.content(), cover);
         storyActivities.saveStory(story);
-
+        approvedText = storyTextOnly;
+        completedStory = story;
         setState(workflowId, StoryWorkflowState.COMPLETED);
         return story;
     }
 
+    private StoryText generateStory(String workflowId, StoryParams params) {
+        setState(workflowId, StoryWorkflowState.GENERATING_STORY);
+        final var story = storyActivities.generateStory(params.characterName(), params.fear(),
+                params.language());
+        return new StoryText(story, List.of(story.content()), Async.function(storyActivities::moderateStory, story));
+    }
+
+    private StoryText generateChapters(String workflowId, StoryParams params) {
+        setState(workflowId, StoryWorkflowState.GENERATING_OUTLINE);
+        final var outline = storyActivities.generateOutline(params.characterName(), params.fear(),
+                params.language(), params.chapters());
+
+        // Chapters only depend on the outline: they are all written at the same time.
+        // Each chapter is moderated as soon as it is written, before it can be read.
+        setState(workflowId, StoryWorkflowState.GENERATING_CHAPTERS);
+        final var chapters = new ArrayList<Promise<String>>(outline.chapters().size());
+        final var moderations = new ArrayList<Promise<ModerationVerdict>>(outline.chapters().size());
+        final var writing = Workflow.newCancellationScope(() -> {
+            for (int i = 0; i < outline.chapters().size(); ++i) {
+                final var title = outline.chapters().get(i).title();
+                final var chapter = Async.function(storyActivities::generateChapter, outline, i,
+                        params.characterName(), params.language());
+                chapters.add(chapter);
+                moderations.add(chapter.thenCompose(chapterText ->
+                        Async.function(storyActivities::moderateStory, new Story(title, chapterText, null))));
+            }
+        });
+        writing.run();
+
+        final var written = new ArrayList<String>(chapters.size());
+        for (int i = 0; i < chapters.size(); ++i) {
+            final var chapter = outline.chapters().get(i).title() + "\n\n" + chapters.get(i).get();
+            final var verdict = moderations.get(i).get();
+            if (!verdict.approved()) {
+                // Next chapters are not worth writing anymore.
+                writing.cancel("Story rejected by moderation");
+                return new StoryText(new Story(outline.title(), String.join("\n\n", written), null), written,
+                        Workflow.newPromise(verdict));
+            }
+            storyActivities.saveChapter(outline.title(), i, chapter);
+            written.add(chapter);
+        }
+        return new StoryText(new Story(outline.title(), String.join("\n\n", written), null), written,
+                Workflow.newPromise(new ModerationVerdict(true, List.of())));
+    }
+
+    private Promise<Story> translateStory(StoryText text, String fromLanguage, String toLanguage) {
+        if (text.chapters().size() == 1) {
+            return Async.function(storyActivities::translateStory, text.story(), fromLanguage, toLanguage);
+        }
+        // A long story would not fit in a single model response: chapters are translated
+        // at the same time, along with the story title.
+        final var chapters = text.chapters().stream()
+                .map(chapter -> Async.function(storyActivities::translateStory,
+                        new Story(text.story().title(), chapter, null), fromLanguage, toLanguage))
+                .toList();
+        return Promise.allOf(chapters).thenApply(ignored -> new Story(chapters.getFirst().get().title(),
+                String.join("\n\n", chapters.stream().map(chapter -> chapter.get().content()).toList()), null));
+    }
+
+    private StoryCover generateCover(String workflowId, Story storyTextOnly, String language) {
+        // Step 2: Generate a prompt for the cover image based on the story content
+        setState(workflowId, StoryWorkflowState.PREPARING_COVER);
+        final var coverPrompt = storyActivities.generateCoverPrompt(storyTextOnly, language);
+
+        // Step 3: Generate the cover image using DALL-E (or similar)
+        setState(workflowId, StoryWorkflowState.GENERATING_COVER);
+        return storyActivities.generateCover(coverPrompt);
+    }
+
+    private Map<String, Story> collectEditions(String workflowId, StoryParams params, Story story,
+                                               Map<String, Promise<Story>> translations) {
+        final var editions = new LinkedHashMap<String, Story>();
+        editions.put(params.language(), story);
+        if (translations.isEmpty()) {
+            return editions;
+        }
+        final var allTranslations = Promise.allOf(translations.values());
+        if (!allTranslations.isCompleted()) {
+            setState(workflowId, StoryWorkflowState.TRANSLATING);
+        }
+        for (final var translation : translations.entrySet()) {
+            try {
+                final var translated = translation.getValue().get();
+                // All editions share the same cover.
+                editions.put(translation.getKey(), new Story(translated.title(), translated.content(), story.cover()));
+            } catch (ActivityFailure e) {
+                if (e.getCause() instanceof CanceledFailure) {
+                    throw e;
+                }
+                // The story is still worth reading in the other languages.
+                logger.warn("Story workflow {}: unable to translate story to {}", workflowId, translation.getKey(), e);
+            }
+        }
+        return editions;
+    }
+
+    private void recordStepLatencies(String workflowId) {
+        try {
+            localActivities.recordStepLatencies(List.copyOf(transitions));
+        } catch (ActivityFailure e) {
+            // Latencies are only used for estimates: this must not fail the workflow.
+            logger.warn("Unable to record step latencies for story workflow {}", workflowId, e);
+        }
+    }
+
+    @Override
+    public StageResult waitForStage(Stage stage) {
+        // Callers are not left waiting for a stage the workflow will never reach.
+        Workflow.await(() -> storyAt(stage) != null || isEnded());
+        return new StageResult(state, storyAt(stage));
+    }
+
+    @Override
+    public void validateWaitForStage(Stage stage) {
+        if (stage == null) {
+            throw new IllegalArgumentException("stage cannot be null");
+        }
+    }
+
+    private Story storyAt(Stage stage) {
+        return switch (stage) {
+            case TEXT -> approvedText;
+            case COMPLETED -> completedStory;
+        };
+    }
+
+    private boolean isEnded() {
+        return switch (state) {
+            case COMPLETED, FAILED, CANCELLED, REJECTED -> true;
+            default -> false;
+        };
+    }
+
     @Override
     public StoryWorkflowState getState() {
         return state;
     }
 
+    @Override
+    public Progress getProgress() {
+        return new Progress(state, List.copyOf(transitions));
+    }
+
     private void setState(String workflowId, StoryWorkflowState state) {
         this.state = state;
+        this.transitions.add(new Transition(state, Workflow.currentTimeMillis()));
         logger.debug("Story workflow {} state changed to {}", workflowId, state);
     }
+
+    /**
+     * @param story      the text of the story, without a cover
+     * @param chapters   the chapters making up the text of the story, with their title
+     * @param moderation the moderation verdict of the text
+     */
+    private record StoryText(Story story, List<String> chapters, Promise<ModerationVerdict> moderation) {
+    }
 }
@@ -0,0 +1,38 @@
+-- Token bucket rate limiter, executed atomically by Redis.
+--
+-- KEYS[1]: bucket key
+-- ARGV[1]: bucket capacity
+-- ARGV[2]: refill rate (tokens per second), must be positive
+-- ARGV[3]: tokens already consumed locally since the last call (always debited),
+--          negative when tokens were refunded
+--
+-- Returns {allowed (0 or 1), tokens left, retry after (milliseconds)}.
+
+local capacity = tonumber(ARGV[1])
+local rate = tonumber(ARGV[2])
+local debt = tonumber(ARGV[3])
+
+-- Use the Redis clock so that all nodes agree on time.
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+local tokens = tonumber(bucket[1]) or capacity
+local ts = tonumber(bucket[2]) or now
+
+tokens = math.min(capacity, math.min(capacity, tokens + math.max(0, now - ts) * rate / 1000) - debt)
+
+local allowed = 0
+local retryAfter = 0
+if tokens >= 1 then
+    tokens = tokens - 1
+    allowed = 1
+else
+    retryAfter = math.ceil((1 - tokens) * 1000 / rate)
+end
+
+redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', now)
+-- An idle bucket is full again after this delay: no need to keep it.
+redis.call('PEXPIRE', KEYS[1], math.ceil(capacity * 1000 / rate))
+
+return { allowed, math.floor(math.max(0, tokens)), retryAfter }
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ClientQuotaTests {
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    private final ClientQuota clientQuota = new ClientQuota(redis, config(2));
+
+    @Test
+    void skipRedisWhenClearlyUnderLimit() {
+        when(redis.execute(eq(ClientQuota.SCRIPT), anyList(), any(Object[].class)))
+                .thenReturn(List.of(1L, 9L, 0L));
+
+        // First call syncs with Redis, next ones consume locally down to the threshold.
+        for (int i = 0; i < 5; ++i) {
+            assertThat(clientQuota.acquire("ip:127.0.0.1")).isTrue();
+        }
+        verify(redis, times(1)).execute(eq(ClientQuota.SCRIPT), anyList(), any(Object[].class));
+
+        // Local headroom is exhausted: local debits are sent along with the next check.
+        clientQuota.acquire("ip:127.0.0.1");
+        verify(redis).execute(eq(ClientQuota.SCRIPT), eq(List.of("temporal-story:quotas:ip:127.0.0.1")),
+                eq("10"), anyString(), eq("4"));
+    }
+
+    @Test
+    void rejectWhenQuotaIsExhausted() {
+        when(redis.execute(eq(ClientQuota.SCRIPT), anyList(), any(Object[].class)))
+                .thenReturn(List.of(0L, 0L, 30000L));
+
+        assertThatThrownBy(() -> clientQuota.acquire("ip:127.0.0.1"))
+                .isInstanceOf(TooManyRequestsException.class)
+                .extracting(e -> ((TooManyRequestsException) e).getRetryAfter())
+                .isEqualTo(Duration.ofSeconds(30));
+    }
+
+    @Test
+    void admitWhenRedisIsUnavailable() {
+        when(redis.execute(eq(ClientQuota.SCRIPT), anyList(), any(Object[].class)))
+                .thenThrow(new IllegalStateException("Redis is down"));
+        // The story is not charged: it must not be refunded.
+        assertThat(clientQuota.acquire("ip:127.0.0.1")).isFalse();
+    }
+
+    @Test
+    void creditRefundedStories() {
+        when(redis.execute(eq(ClientQuota.SCRIPT), anyList(), any(Object[].class)))
+                .thenReturn(List.of(1L, 9L, 0L));
+
+        clientQuota.acquire("ip:127.0.0.1");
+        clientQuota.acquire("ip:127.0.0.1");
+        clientQuota.refund("ip:127.0.0.1");
+        clientQuota.refund("ip:127.0.0.1");
+        for (int i = 0; i < 5; ++i) {
+            clientQuota.acquire("ip:127.0.0.1");
+        }
+        // Refunded stories are consumed locally again, and only the net debt is sent.
+        clientQuota.acquire("ip:127.0.0.1");
+        verify(redis).execute(eq(ClientQuota.SCRIPT), eq(List.of("temporal-story:quotas:ip:127.0.0.1")),
+                eq("10"), anyString(), eq("4"));
+    }
+
+    @Test
+    void rejectQuotasWhichNeverRefill() {
+        assertThatThrownBy(() -> new ClientQuota(redis, config(0)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void clientIdDoesNotExposeApiKeys() {
+        assertThat(clientQuota.clientId("secret", "127.0.0.1")).startsWith("key:").doesNotContain("secret");
+        assertThat(clientQuota.clientId(null, "127.0.0.1")).isEqualTo("ip:127.0.0.1");
+    }
+
+    @Test
+    void identifyUnknownApiKeysByAddress() {
+        assertThat(clientQuota.clientId("made-up", "127.0.0.1")).isEqualTo("ip:127.0.0.1");
+    }
+
+    static AppConfig config(double refillPerMinute) {
+        return new AppConfig(null,
+                new AppConfig.Admission(true, 10, 20, Duration.ofSeconds(2), Duration.ofSeconds(10),
+                        Duration.ofMinutes(1), Set.of("secret"), 2),
+                new AppConfig.Quota(true, 10, refillPerMinute, 0.5, Duration.ofMinutes(1), 100),
+                null, null, null, null);
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory;
+
+import io.temporal.spring.boot.ActivityImpl;
+import io.temporal.testing.TestEnvironmentOptions;
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.testserver.TestServer;
+import io.temporal.worker.WorkerFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.image.ImageModel;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the API and worker roles in separate application contexts, sharing a
+ * single Temporal test server: stories started by the API role must be
+ * generated by the worker role.
+ */
+class RolesTests {
+    private static TestServer.PortBoundTestServer testServer;
+    private static TestWorkflowEnvironment testEnv;
+    private static ConfigurableApplicationContext api;
+    private static ConfigurableApplicationContext worker;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        final int port;
+        try (final var socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        testServer = TestServer.createPortBoundServer(port);
+        final var target = "127.0.0.1:" + port;
+        testEnv = TestWorkflowEnvironment.newInstance(TestEnvironmentOptions.newBuilder()
+                .setUseExternalService(true)
+                .setTarget(target)
+                .build());
+
+        api = run(new SpringApplicationBuilder(Application.class), "api", target);
+        worker = run(new SpringApplicationBuilder(Application.class, FakeActivitiesConfig.class), "worker", target);
+    }
+
+    private static ConfigurableApplicationContext run(SpringApplicationBuilder app, String role, String target) {
+        return app.profiles(role).run(
+                "--spring.temporal.connection.target=" + target,
+                "--server.port=0",
+                "--management.server.port=0",
+                "--app.pool.enabled=false",
+                "--app.quota.enabled=false",
+                // The fake activities replace the ones calling AI models.
+                "--spring.main.allow-bean-definition-overriding=true");
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (worker != null) {
+            worker.close();
+        }
+        if (api != null) {
+            api.close();
+        }
+        if (testEnv != null) {
+            testEnv.close();
+        }
+        if (testServer != null) {
+            testServer.close();
+        }
+    }
+
+    @Test
+    void apiRole() {
+        assertThat(api.getBeansOfType(StoryController.class)).hasSize(1);
+        assertThat(api.getBeansOfType(StoryActivities.class)).isEmpty();
+        assertThat(api.getBeansOfType(ChatModel.class)).isEmpty();
+        assertThat(api.getBeansOfType(ImageModel.class)).isEmpty();
+        assertThat(api.getBeansOfType(WorkerFactory.class).values())
+                .allSatisfy(factory -> assertThat(factory.isStarted()).isFalse());
+    }
+
+    @Test
+    void workerRole() {
+        assertThat(worker.getBeansOfType(StoryController.class)).isEmpty();
+        assertThat(worker.getBeansOfType(StoryService.class)).isEmpty();
+        assertThat(worker.getBeansOfType(StoryActivities.class)).hasSize(1);
+        assertThat(worker.getBean(WorkerFactory.class).isStarted()).isTrue();
+    }
+
+    @Test
+    void generateStoryAcrossRoles() throws TimeoutException {
+        final var storyService = api.getBean(StoryService.class);
+        final var storyId = storyService.generateStory(
+                new StoryWorkflow.StoryParams("Alex", "PHP", "French"), null, "test");
+
+        final var story = testEnv.getWorkflowClient().newUntypedWorkflowStub("story-" + storyId)
+                .getResult(30, TimeUnit.SECONDS, Story.class);
+        assertThat(story).isEqualTo(new Story("Title", "Story", FakeStoryActivities.COVER));
+        assertThat(storyService.getStatus(storyId).state()).isEqualTo(StoryWorkflowState.COMPLETED);
+    }
+
+    @Test
+    void waitForStoryAcrossRoles() {
+        final var storyService = api.getBean(StoryService.class);
+        final var created = storyService.generateStory(new StoryWorkflow.StoryParams("Alex", "PHP", "French"), null, "test",
+                StoryWorkflow.Stage.COMPLETED, Duration.ofSeconds(30)).join();
+        assertThat(created.state()).isEqualTo(StoryWorkflowState.COMPLETED);
+        assertThat(created.story()).isEqualTo(new Story("Title", "Story", FakeStoryActivities.COVER));
+    }
+
+    @Test
+    void stopWaitingWhenNoWorkerAccepts() {
+        final var storyService = api.getBean(StoryService.class);
+        final var workerFactory = worker.getBean(WorkerFactory.class);
+        workerFactory.suspendPolling();
+        try {
+            final var startedAt = System.nanoTime();
+            final var created = storyService.generateStory(new StoryWorkflow.StoryParams("Alex", "PHP", "French"), null, "test",
+                    StoryWorkflow.Stage.COMPLETED, Duration.ofSeconds(2)).join();
+            // The caller gets the story ID back, instead of waiting for a worker to accept the update.
+            assertThat(Duration.ofNanos(System.nanoTime() - startedAt)).isLessThan(Duration.ofSeconds(10));
+            assertThat(created.workflowId()).isNotNull();
+            assertThat(created.state()).isEqualTo(StoryWorkflowState.INITIALIZING);
+            assertThat(created.story()).isNull();
+        } finally {
+            workerFactory.resumePolling();
+        }
+    }
+
+    static class FakeActivitiesConfig {
+        @Bean
+        FakeStoryActivities storyActivitiesImpl() {
+            return new FakeStoryActivities();
+        }
+    }
+
+    @ActivityImpl(taskQueues = "story-tasks")
+    static class FakeStoryActivities implements StoryActivities {
+        static final StoryCover COVER = new StoryCover("http://foo.bar", 32, 32);
+
+        @Override
+        public Story generateStory(String characterName, String fear, String language) {
+            return new Story("Title", "Story", null);
+        }
+
+        @Override
+        public StoryOutline generateOutline(String characterName, String fear, String language, int chapters) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String generateChapter(StoryOutline outline, int index, String characterName, String language) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void saveChapter(String title, int index, String content) {
+        }
+
+        @Override
+        public Story translateStory(Story story, String fromLanguage, String toLanguage) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ModerationVerdict moderateStory(Story story) {
+            return new ModerationVerdict(true, List.of());
+        }
+
+        @Override
+        public void saveModeration(ModerationVerdict verdict) {
+        }
+
+        @Override
+        public String generateCoverPrompt(Story story, String language) {
+            return "A prompt";
+        }
+
+        @Override
+        public StoryCover generateCover(String prompt) {
+            return COVER;
+        }
+
+        @Override
+        public void saveStory(Story story) {
+        }
+
+        @Override
+        public void saveEditions(Map<String, Story> editions) {
+        }
+
+        @Override
+        public void recordStepLatencies(List<StoryWorkflow.Transition> transitions) {
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class SpaControllerTests {
+    private static final String PAGE = "<html><body>Temporal Story</body></html>";
+    private MockMvc mvc;
+    private byte[] gzippedPage;
+
+    @BeforeEach
+    void setUp(@TempDir Path dir) throws IOException {
+        final var buffer = new ByteArrayOutputStream();
+        try (final var out = new GZIPOutputStream(buffer)) {
+            out.write(PAGE.getBytes(StandardCharsets.UTF_8));
+        }
+        gzippedPage = buffer.toByteArray();
+        Files.writeString(dir.resolve("index.html"), PAGE);
+        Files.write(dir.resolve("index.html.gz"), gzippedPage);
+        mvc = MockMvcBuilders.standaloneSetup(new SpaController(new FileSystemResource(dir.resolve("index.html"))))
+                .build();
+    }
+
+    @Test
+    void servePrecompressedPage() throws Exception {
+        mvc.perform(get("/story/1234").header("Accept-Encoding", "gzip, deflate, br;q=0"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(header().string("Vary", "Accept-Encoding"))
+                .andExpect(header().string("Cache-Control", "no-cache"))
+                .andExpect(content().bytes(gzippedPage));
+    }
+
+    @Test
+    void servePlainPage() throws Exception {
+        mvc.perform(get("/"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(content().string(PAGE));
+    }
+
+    @Test
+    void revalidatePage() throws Exception {
+        final var etag = mvc.perform(get("/")).andReturn().getResponse().getHeader("ETag");
+        assertThat(etag).isNotBlank();
+        mvc.perform(get("/story/1234").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void parseAcceptEncoding() {
+        assertThat(SpaController.accepts("gzip, br", "br")).isTrue();
+        assertThat(SpaController.accepts("gzip;q=1.0, br;q=0", "br")).isFalse();
+        assertThat(SpaController.accepts("deflate", "gzip")).isFalse();
+        assertThat(SpaController.accepts(null, "gzip")).isFalse();
+    }
+
+    @Test
+    void cacheAssets() throws Exception {
+        try (final var context = new AnnotationConfigWebApplicationContext()) {
+            context.setServletContext(new MockServletContext());
+            context.register(AssetsConfig.class);
+            context.refresh();
+            final var assets = MockMvcBuilders.webAppContextSetup(context).build();
+
+            assets.perform(get("/_nuxt/entry.Dq3mJ0rS.js"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string("Cache-Control", "max-age=31536000, public, immutable"));
+            // The manifest of the latest build keeps the same name across deployments.
+            assets.perform(get("/_nuxt/builds/latest.json"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string("Cache-Control", "no-cache"));
+            assets.perform(get("/_nuxt/builds/meta/4f2d9c1e.json"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string("Cache-Control", "max-age=31536000, public, immutable"));
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @EnableWebMvc
+    @Import(WebConfig.class)
+    static class AssetsConfig {
+    }
+}
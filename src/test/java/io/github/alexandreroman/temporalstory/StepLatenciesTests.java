@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory;
+
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.data.Percentage.withPercentage;
+
+class StepLatenciesTests {
+    private static Histogram[] newHistograms(StepLatencies.Pipeline pipeline, long... latencies) {
+        final var histograms = new Histogram[StoryWorkflowState.values().length];
+        for (int i = 0; i < pipeline.steps().size(); ++i) {
+            histograms[pipeline.steps().get(i).ordinal()] = newHistogram(latencies[i], 10);
+        }
+        return histograms;
+    }
+
+    private static Histogram newHistogram(long latency, long count) {
+        final var histogram = new Histogram(2);
+        histogram.recordValueWithCount(latency, count);
+        return histogram;
+    }
+
+    @Test
+    void estimateRemainingTime() {
+        final var histograms = newHistograms(StepLatencies.Pipeline.SHORT, 100, 10000, 2000, 15000, 3000, 200);
+        // Translations outlast the cover in half of the workflows.
+        histograms[StoryWorkflowState.TRANSLATING.ordinal()] = newHistogram(3000, 5);
+        final var estimates = StepLatencies.Estimates.from(StepLatencies.Pipeline.SHORT, histograms);
+
+        // Time left in the current step, plus all the following steps.
+        assertThat(estimates.remainingMillis(StoryWorkflowState.GENERATING_STORY, 4000))
+                .isCloseTo(6000 + 2000 + 15000 + 1500 + 200, withPercentage(2));
+        // A late step is expected to complete right away.
+        assertThat(estimates.remainingMillis(StoryWorkflowState.GENERATING_COVER, 60000))
+                .isCloseTo(1500 + 200, withPercentage(2));
+        assertThat(estimates.remainingMillis(StoryWorkflowState.TRANSLATING, 1000))
+                .isCloseTo(2000 + 200, withPercentage(2));
+        assertThat(estimates.remainingMillis(StoryWorkflowState.COMPLETED, 0)).isEqualTo(-1);
+        assertThat(estimates.remainingMillis(StoryWorkflowState.GENERATING_OUTLINE, 0)).isEqualTo(-1);
+    }
+
+    @Test
+    void estimateLongStories() {
+        final var estimates = StepLatencies.Estimates.from(StepLatencies.Pipeline.LONG,
+                newHistograms(StepLatencies.Pipeline.LONG, 100, 5000, 30000, 4000, 15000, 3000, 200));
+
+        assertThat(estimates.remainingMillis(StoryWorkflowState.GENERATING_OUTLINE, 0))
+                .isCloseTo(5000 + 30000 + 4000 + 15000 + 3000 + 200, withPercentage(2));
+        assertThat(estimates.remainingMillis(StoryWorkflowState.GENERATING_STORY, 0)).isEqualTo(-1);
+    }
+
+    @Test
+    void selectPipeline() {
+        assertThat(StepLatencies.Pipeline.of(List.of(
+                new StoryWorkflow.Transition(StoryWorkflowState.INITIALIZING, 0),
+                new StoryWorkflow.Transition(StoryWorkflowState.GENERATING_STORY, 100))))
+                .isEqualTo(StepLatencies.Pipeline.SHORT);
+        assertThat(StepLatencies.Pipeline.of(List.of(
+                new StoryWorkflow.Transition(StoryWorkflowState.INITIALIZING, 0),
+                new StoryWorkflow.Transition(StoryWorkflowState.GENERATING_OUTLINE, 100))))
+                .isEqualTo(StepLatencies.Pipeline.LONG);
+    }
+
+    @Test
+    void unknownWithoutEnoughSamples() {
+        final var histograms = newHistograms(StepLatencies.Pipeline.SHORT, 100, 10000, 2000, 15000, 3000, 200);
+        histograms[StoryWorkflowState.GENERATING_COVER.ordinal()] = null;
+        final var estimates = StepLatencies.Estimates.from(StepLatencies.Pipeline.SHORT, histograms);
+
+        assertThat(estimates.remainingMillis(StoryWorkflowState.GENERATING_STORY, 0)).isEqualTo(-1);
+        assertThat(estimates.remainingMillis(StoryWorkflowState.SAVING_RESULTS, 0))
+                .isCloseTo(200, withPercentage(2));
+    }
+}
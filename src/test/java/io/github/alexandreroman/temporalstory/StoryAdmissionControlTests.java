@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory;
+
+import io.github.alexandreroman.temporalstory.StoryAdmissionControl.Lane;
+import io.github.alexandreroman.temporalstory.StoryAdmissionControl.LoadSnapshot;
+import io.temporal.client.WorkflowClient;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class StoryAdmissionControlTests {
+    private final StoryAdmissionControl admissionControl = new StoryAdmissionControl(mock(WorkflowClient.class),
+            new AppConfig(null, new AppConfig.Admission(true, 10, 20, Duration.ofSeconds(2),
+                    Duration.ofSeconds(10), Duration.ofMinutes(1), Set.of("premium"), 2), null, null, null, null, null));
+
+    @Test
+    void admitWhenUnderLimits() {
+        final var load = new LoadSnapshot(true, 5, 1, 5, System.nanoTime());
+        assertThat(admissionControl.checkLimits(load, Lane.STANDARD)).isNull();
+    }
+
+    @Test
+    void admitWhenLoadIsUnknown() {
+        final var load = new LoadSnapshot(false, 0, 0, 0, System.nanoTime());
+        assertThat(admissionControl.checkLimits(load, Lane.STANDARD)).isNull();
+        assertThat(admissionControl.checkLimits(null, Lane.STANDARD)).isNull();
+    }
+
+    @Test
+    void retryAfterDependsOnDispatchRate() {
+        // 20 tasks over the limit, draining at 2 tasks per second.
+        final var load = new LoadSnapshot(true, 29, 2, 5, System.nanoTime());
+        assertThat(admissionControl.checkLimits(load, Lane.STANDARD)).isEqualTo(Duration.ofSeconds(10));
+    }
+
+    @Test
+    void retryAfterIsBounded() {
+        final var load = new LoadSnapshot(true, 1000, 1, 5, System.nanoTime());
+        assertThat(admissionControl.checkLimits(load, Lane.STANDARD)).isEqualTo(Duration.ofMinutes(1));
+    }
+
+    @Test
+    void rejectWhenTooManyWorkflowsAreRunning() {
+        final var load = new LoadSnapshot(true, 0, 0, 20, System.nanoTime());
+        assertThat(admissionControl.checkLimits(load, Lane.STANDARD)).isEqualTo(Duration.ofSeconds(10));
+    }
+
+    @Test
+    void priorityLaneHasMoreHeadroom() {
+        assertThat(admissionControl.resolveLane("premium")).isEqualTo(Lane.PRIORITY);
+        assertThat(admissionControl.resolveLane("other")).isEqualTo(Lane.STANDARD);
+        assertThat(admissionControl.resolveLane(null)).isEqualTo(Lane.STANDARD);
+
+        final var load = new LoadSnapshot(true, 15, 1, 30, System.nanoTime());
+        assertThat(admissionControl.checkLimits(load, Lane.STANDARD)).isNotNull();
+        assertThat(admissionControl.checkLimits(load, Lane.PRIORITY)).isNull();
+    }
+}
@@ -16,6 +16,8 @@
 
 package io.github.alexandreroman.temporalstory;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.redis.testcontainers.RedisContainer;
 import io.github.alexandreroman.temporalstory.impl.TemporalTestConfig;
 import io.temporal.client.WorkflowClient;
@@ -26,6 +28,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
@@ -33,6 +38,7 @@ import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.util.LinkedMultiValueMap;
 import org.testcontainers.junit.jupiter.Container;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -42,7 +48,8 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.when;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
-        classes = {Application.class, TemporalTestConfig.class})
+        classes = {Application.class, TemporalTestConfig.class},
+        properties = "app.export.api-keys=export-key")
 @ActiveProfiles("tests")
 class StoryControllerTests {
     @Container
@@ -77,6 +84,8 @@ class StoryControllerTests {
                 .thenReturn("A prompt");
         when(storyActivities.generateCover(anyString()))
                 .thenReturn(new StoryCover("http://foo.bar", 32, 32));
+        when(storyActivities.moderateStory(any(Story.class)))
+                .thenReturn(new ModerationVerdict(true, List.of()));
         //doNothing().when(storyActivities).saveStory(any(Story.class));
 
         final var params = new LinkedMultiValueMap<String, String>();
@@ -97,11 +106,65 @@ class StoryControllerTests {
         testEnv.awaitTermination(2, TimeUnit.SECONDS);
 
         // Simulate the end of the workflow by storing a story.
-        storyRepository.saveStory(workflowId, new Story("Title", "Story", new StoryCover("http://foo.bar", 32, 32)));
+        final var story = new Story("Title", "Story", new StoryCover("http://foo.bar", 32, 32));
+        storyRepository.saveEditions(workflowId, Map.of("English", story));
+        storyRepository.saveStory(workflowId, story);
 
         final var respStory = client.getForEntity(storyPath, StoryController.StoryProgress.class);
         assertThat(respStory.getStatusCode()).isEqualTo(HttpStatus.OK);
         assertThat(respStory.getBody().state()).isEqualTo(StoryWorkflowState.COMPLETED);
         assertThat(respStory.getBody().story()).isNotNull();
+
+        // The original edition is available by its language.
+        final var respEdition = client.getForEntity(storyPath + "?lang=english", StoryController.StoryProgress.class);
+        assertThat(respEdition.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(respEdition.getBody().story()).isEqualTo(story);
+        assertThat(client.getForEntity(storyPath + "?lang=french", String.class).getStatusCode())
+                .isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void exportStories() throws Exception {
+        final var cover = new StoryCover("http://foo.bar", 32, 32);
+        for (int i = 0; i < 3; ++i) {
+            storyRepository.saveStory("export-" + i, new Story("Title " + i, "Story " + i, cover));
+        }
+        storyRepository.saveStory(StoryPool.STORY_ID_PREFIX + "export", new Story("Title", StoryPool.PLACEHOLDER, cover));
+
+        final var headers = new HttpHeaders();
+        headers.set("X-API-Key", "export-key");
+        final var resp = client.exchange("/api/stories/export", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        assertThat(resp.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(resp.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_NDJSON);
+
+        final var objectMapper = new ObjectMapper();
+        final var lines = resp.getBody().lines().map(line -> {
+            try {
+                return objectMapper.readValue(line, new TypeReference<Map<String, Object>>() {
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }).toList();
+        assertThat(lines).filteredOn(line -> line.containsKey("id"))
+                .extracting(line -> line.get("id"))
+                .contains("export-0", "export-1", "export-2")
+                // Pooled stories are not exported until they are claimed.
+                .doesNotContain(StoryPool.STORY_ID_PREFIX + "export");
+        assertThat(lines.getLast()).containsEntry("done", true);
+
+        assertThat(client.exchange("/api/stories/export?cursor=foo", HttpMethod.GET, new HttpEntity<>(headers), String.class)
+                .getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    void exportStoriesWithApiKeyOnly() {
+        assertThat(client.getForEntity("/api/stories/export", String.class).getStatusCode())
+                .isEqualTo(HttpStatus.FORBIDDEN);
+
+        final var headers = new HttpHeaders();
+        headers.set("X-API-Key", "not-an-export-key");
+        assertThat(client.exchange("/api/stories/export", HttpMethod.GET, new HttpEntity<>(headers), String.class)
+                .getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
     }
 }
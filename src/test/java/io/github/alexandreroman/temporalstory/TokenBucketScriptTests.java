@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory;
+
+import com.redis.testcontainers.RedisContainer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * Runs the token bucket script used by {@link ClientQuota} against a real Redis server.
+ */
+@Testcontainers
+class TokenBucketScriptTests {
+    private static final String KEY = "temporal-story:quotas:test";
+
+    @Container
+    static RedisContainer redisContainer = new RedisContainer(RedisContainer.DEFAULT_IMAGE_NAME.withTag("8.4"));
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redis;
+
+    @BeforeAll
+    static void setUp() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(redisContainer.getHost(), redisContainer.getFirstMappedPort()));
+        connectionFactory.afterPropertiesSet();
+        redis = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void clearBucket() {
+        redis.delete(KEY);
+    }
+
+    private static List<Long> take(int capacity, double ratePerSecond, int debt) {
+        return redis.execute(ClientQuota.SCRIPT, List.of(KEY),
+                String.valueOf(capacity), String.valueOf(ratePerSecond), String.valueOf(debt));
+    }
+
+    @Test
+    void exhaustBucket() {
+        assertThat(take(3, 1, 0)).containsExactly(1L, 2L, 0L);
+        assertThat(take(3, 1, 0)).containsExactly(1L, 1L, 0L);
+        assertThat(take(3, 1, 0)).containsExactly(1L, 0L, 0L);
+
+        // The next token comes in a second at most.
+        final var rejected = take(3, 1, 0);
+        assertThat(rejected.get(0)).isZero();
+        assertThat(rejected.get(2)).isBetween(1L, 1000L);
+
+        // Idle buckets expire once they would be full again.
+        assertThat(redis.getExpire(KEY)).isBetween(1L, 3L);
+    }
+
+    @Test
+    void refillBucket() throws InterruptedException {
+        assertThat(take(2, 10, 0).get(0)).isEqualTo(1L);
+        assertThat(take(2, 10, 0).get(0)).isEqualTo(1L);
+        assertThat(take(2, 10, 0).get(0)).isZero();
+
+        // 10 tokens per second: the bucket is full again, and never gets over its capacity.
+        Thread.sleep(500);
+        assertThat(take(2, 10, 0)).containsExactly(1L, 1L, 0L);
+    }
+
+    @Test
+    void debitLocalDebt() {
+        // Tokens consumed locally are debited before the current request is checked.
+        assertThat(take(5, 0.01, 3)).containsExactly(1L, 1L, 0L);
+
+        // Requests are rejected while the debt is not paid back.
+        final var rejected = take(5, 0.01, 3);
+        assertThat(rejected.get(0)).isZero();
+        assertThat(rejected.get(1)).isZero();
+        assertThat(Duration.ofMillis(rejected.get(2))).isBetween(Duration.ofSeconds(290), Duration.ofSeconds(300));
+    }
+
+    @Test
+    void creditRefunds() {
+        assertThat(take(5, 0.01, 0)).containsExactly(1L, 4L, 0L);
+        // A refund never gets a bucket over its capacity.
+        assertThat(take(5, 0.01, -3)).containsExactly(1L, 4L, 0L);
+    }
+
+    @Test
+    void enforceQuotas() {
+        final var clientQuota = new ClientQuota(redis,
+                new AppConfig(null,
+                        new AppConfig.Admission(true, 10, 20, Duration.ofSeconds(2), Duration.ofSeconds(10),
+                                Duration.ofMinutes(1), Set.of(), 2),
+                        new AppConfig.Quota(true, 2, 1, 0.5, Duration.ofMinutes(1), 100), null, null, null, null));
+        clientQuota.acquire("test");
+        clientQuota.acquire("test");
+        // One story per minute.
+        assertThatExceptionOfType(TooManyRequestsException.class)
+                .isThrownBy(() -> clientQuota.acquire("test"))
+                .satisfies(e -> assertThat(e.getRetryAfter()).isBetween(Duration.ofSeconds(50), Duration.ofSeconds(60)));
+    }
+}
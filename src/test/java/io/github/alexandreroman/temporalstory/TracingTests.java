@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory;
+
+import io.github.alexandreroman.temporalstory.impl.StoryWorkflowImpl;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowClientOptions;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.opentracing.OpenTracingClientInterceptor;
+import io.temporal.opentracing.OpenTracingOptions;
+import io.temporal.opentracing.OpenTracingWorkerInterceptor;
+import io.temporal.testing.TestEnvironmentOptions;
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.testserver.TestServer;
+import io.temporal.worker.WorkerFactoryOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TracingTests {
+    private final InMemorySpanExporter spanExporter = InMemorySpanExporter.create();
+    private OpenTelemetrySdk openTelemetry;
+    private TestWorkflowEnvironment testEnv;
+
+    @BeforeEach
+    void setUp() {
+        // Spring Boot propagates traces using W3C headers by default.
+        openTelemetry = OpenTelemetrySdk.builder()
+                .setPropagators(ContextPropagators.create(W3CTraceContextPropagator.getInstance()))
+                .setTracerProvider(SdkTracerProvider.builder()
+                        .addSpanProcessor(SimpleSpanProcessor.create(spanExporter))
+                        .build())
+                .build();
+
+        // Mimic the way the Temporal starter sets up tracing, using our configuration.
+        final var tracingConfig = new TracingConfig();
+        final var tracingOptions = OpenTracingOptions.newBuilder()
+                .setTracer(tracingConfig.openTracingTracer(openTelemetry))
+                .build();
+        final var workerFactoryOptions = tracingConfig.queueWaitTracingCustomizer(openTelemetry)
+                .customize(WorkerFactoryOptions.newBuilder()
+                        .setWorkerInterceptors(new OpenTracingWorkerInterceptor(tracingOptions)))
+                .build();
+        testEnv = TestWorkflowEnvironment.newInstance(TestEnvironmentOptions.newBuilder()
+                .setWorkflowClientOptions(WorkflowClientOptions.newBuilder()
+                        .setInterceptors(new OpenTracingClientInterceptor(tracingOptions))
+                        .build())
+                .setWorkerFactoryOptions(workerFactoryOptions)
+                .build());
+
+        final var storyActivities = mock(StoryActivities.class);
+        when(storyActivities.generateStory(anyString(), anyString(), anyString()))
+                .thenReturn(new Story("Title", "Story", null));
+        when(storyActivities.generateCoverPrompt(any(Story.class), anyString()))
+                .thenReturn("A prompt");
+        when(storyActivities.generateCover(anyString()))
+                .thenReturn(new StoryCover("http://foo.bar", 32, 32));
+        when(storyActivities.moderateStory(any(Story.class)))
+                .thenReturn(new ModerationVerdict(true, List.of()));
+
+        final var worker = testEnv.newWorker("story-tasks");
+        worker.registerWorkflowImplementationTypes(StoryWorkflowImpl.class);
+        worker.registerActivitiesImplementations(storyActivities);
+        testEnv.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        testEnv.close();
+        openTelemetry.close();
+    }
+
+    @Test
+    void traceStoryWorkflow() {
+        final var workflow = testEnv.getWorkflowClient().newWorkflowStub(StoryWorkflow.class,
+                WorkflowOptions.newBuilder().setTaskQueue("story-tasks").setWorkflowId("story-test").build());
+        workflow.createStory(new StoryWorkflow.StoryParams("Alex", "PHP", "French"));
+
+        final var spans = spanExporter.getFinishedSpanItems().stream()
+                .collect(Collectors.toMap(SpanData::getName, Function.identity(), (a, b) -> a));
+        assertThat(spans).containsKeys(
+                "StartWorkflow:StoryWorkflow", "RunWorkflow:StoryWorkflow", "WorkflowQueueWait:StoryWorkflow",
+                "RunActivity:GenerateStory", "ActivityQueueWait:GenerateStory",
+                "RunActivity:GenerateCover", "ActivityQueueWait:GenerateCover");
+
+        // All spans belong to the trace started by the client.
+        final var traceId = spans.get("StartWorkflow:StoryWorkflow").getTraceId();
+        assertThat(spans.values()).allSatisfy(span -> assertThat(span.getTraceId()).isEqualTo(traceId));
+
+        // Queue wait spans are children of the span of the code they were waiting for.
+        assertThat(spans.get("ActivityQueueWait:GenerateStory").getParentSpanId())
+                .isEqualTo(spans.get("RunActivity:GenerateStory").getSpanId());
+        assertThat(spans.get("WorkflowQueueWait:StoryWorkflow").getParentSpanId())
+                .isEqualTo(spans.get("RunWorkflow:StoryWorkflow").getSpanId());
+    }
+
+    @Test
+    void traceStoryRequest() throws IOException {
+        final int port;
+        try (final var socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        final var testServer = TestServer.createPortBoundServer(port);
+        try (final var app = new SpringApplicationBuilder(Application.class,
+                RolesTests.FakeActivitiesConfig.class, SpanExporterConfig.class).run(
+                "--spring.temporal.connection.target=127.0.0.1:" + port,
+                "--server.port=0",
+                "--management.server.port=0",
+                "--management.tracing.sampling.probability=1.0",
+                "--app.pool.enabled=false",
+                "--app.quota.enabled=false",
+                "--spring.main.allow-bean-definition-overriding=true")) {
+            // The Temporal starter must pick up the tracer exposed by our configuration.
+            assertThat(app.getBean(WorkflowClient.class).getOptions().getInterceptors())
+                    .hasAtLeastOneElementOfType(OpenTracingClientInterceptor.class);
+
+            final var resp = new RestTemplate().postForEntity(
+                    "http://127.0.0.1:" + app.getEnvironment().getProperty("local.server.port")
+                            + "/api/story?characterName=Alex&fear=PHP", null, Map.class);
+            assertThat(resp.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+            app.getBean(SdkTracerProvider.class).forceFlush().join(10, TimeUnit.SECONDS);
+
+            final var exporter = app.getBean(InMemorySpanExporter.class);
+            final var httpSpan = exporter.getFinishedSpanItems().stream()
+                    .filter(span -> span.getKind() == SpanKind.SERVER && span.getName().contains("/api/story"))
+                    .findFirst().orElseThrow();
+            final var startSpan = exporter.getFinishedSpanItems().stream()
+                    .filter(span -> span.getName().equals("StartWorkflow:StoryWorkflow"))
+                    .findFirst().orElseThrow();
+            // The workflow is started within the trace of the request which asked for the story.
+            assertThat(startSpan.getTraceId()).isEqualTo(httpSpan.getTraceId());
+            assertThat(startSpan.getParentSpanId()).isEqualTo(httpSpan.getSpanId());
+        } finally {
+            testServer.close();
+        }
+    }
+
+    static class SpanExporterConfig {
+        @Bean
+        InMemorySpanExporter inMemorySpanExporter() {
+            return InMemorySpanExporter.create();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory.impl;
+
+import io.github.alexandreroman.temporalstory.AppConfig;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ModelRouterTests {
+    private static final List<String> MODELS = List.of("primary", "secondary");
+
+    private static ModelRouter newRouter(double maxHedgeRatio) {
+        return new ModelRouter(new AppConfig(null, null, null, null,
+                new AppConfig.Routing(MODELS, List.of(), Duration.ofMinutes(10), 5, 0.2, 2, maxHedgeRatio), null, null));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    void hedgeSlowCall() throws InterruptedException {
+        final var router = newRouter(0.5);
+        for (int i = 0; i < 10; ++i) {
+            router.route("test", List.of("primary"), model -> {
+                sleep(20);
+                return model;
+            });
+        }
+
+        final var loserCancelled = new CountDownLatch(1);
+        final var result = router.chat("test", model -> {
+            if ("primary".equals(model)) {
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    loserCancelled.countDown();
+                }
+                throw new IllegalStateException("Interrupted");
+            }
+            return model;
+        });
+        assertThat(result).isEqualTo("secondary");
+        assertThat(loserCancelled.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void skipFailingModel() {
+        final var router = newRouter(0);
+        final var primaryCalls = new AtomicInteger();
+        for (int i = 0; i < 20; ++i) {
+            final var result = router.chat("test", model -> {
+                if ("primary".equals(model)) {
+                    primaryCalls.incrementAndGet();
+                    throw new IllegalStateException("Model unavailable");
+                }
+                return model;
+            });
+            assertThat(result).isEqualTo("secondary");
+        }
+        // Once enough errors are seen, the failing model is not tried first anymore.
+        assertThat(primaryCalls).hasValue(5);
+        assertThat(router.rank("test", MODELS)).containsExactly("secondary", "primary");
+    }
+
+    @Test
+    void preferFasterModel() {
+        final var router = newRouter(0);
+        for (int i = 0; i < 5; ++i) {
+            router.route("test", List.of("primary"), model -> {
+                sleep(100);
+                return model;
+            });
+            router.route("test", List.of("secondary"), model -> model);
+        }
+        assertThat(router.rank("test", MODELS)).containsExactly("secondary", "primary");
+    }
+
+    @Test
+    void failWhenAllModelsFail() {
+        final var router = newRouter(0);
+        assertThatThrownBy(() -> router.chat("test", model -> {
+            throw new IllegalStateException("Model " + model + " unavailable");
+        })).isInstanceOf(IllegalStateException.class)
+                .hasMessage("Model secondary unavailable")
+                .satisfies(e -> assertThat(e.getSuppressed()).hasSize(1));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory.impl;
+
+import io.github.alexandreroman.temporalstory.*;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.testing.TestWorkflowEnvironment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class StoryPoolWorkflowTests {
+    private TestWorkflowEnvironment testEnv;
+    private StoryActivities storyActivities;
+    private StoryPoolActivities poolActivities;
+
+    @BeforeEach
+    void setUp() {
+        testEnv = TestWorkflowEnvironment.newInstance();
+        storyActivities = mock(StoryActivities.class);
+        when(storyActivities.moderateStory(any(Story.class)))
+                .thenReturn(new ModerationVerdict(true, List.of()));
+        poolActivities = mock(StoryPoolActivities.class);
+        final var worker = testEnv.newWorker("story-tasks");
+        worker.registerWorkflowImplementationTypes(StoryWorkflowImpl.class, StoryPoolWorkflowImpl.class);
+        worker.registerActivitiesImplementations(storyActivities, poolActivities);
+        testEnv.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        testEnv.close();
+    }
+
+    @Test
+    void refillPool() {
+        when(poolActivities.planRefill()).thenReturn(List.of(
+                new StoryPool.Refill("spiders", "english", 2),
+                new StoryPool.Refill("the dark", "french", 1)));
+        when(storyActivities.generateStory(eq(StoryPool.PLACEHOLDER), anyString(), anyString()))
+                .thenReturn(new Story("Title", "Story", null));
+        when(storyActivities.generateCoverPrompt(any(Story.class), anyString()))
+                .thenReturn("A prompt");
+        when(storyActivities.generateCover(anyString()))
+                .thenReturn(new StoryCover("http://foo.bar", 32, 32));
+
+        final var workflow = testEnv.getWorkflowClient().newWorkflowStub(StoryPoolWorkflow.class,
+                WorkflowOptions.newBuilder().setTaskQueue("story-tasks").build());
+        workflow.refill();
+
+        verify(storyActivities, times(3)).saveStory(any(Story.class));
+        verify(poolActivities, times(2)).addToPool(startsWith("pool-"), eq("spiders"), eq("english"));
+        verify(poolActivities).addToPool(startsWith("pool-"), eq("the dark"), eq("french"));
+    }
+
+    @Test
+    void skipFailedStories() {
+        when(poolActivities.planRefill()).thenReturn(List.of(new StoryPool.Refill("spiders", "english", 1)));
+        when(storyActivities.generateStory(anyString(), anyString(), anyString()))
+                .thenThrow(new IllegalStateException("Model unavailable"));
+
+        final var workflow = testEnv.getWorkflowClient().newWorkflowStub(StoryPoolWorkflow.class,
+                WorkflowOptions.newBuilder().setTaskQueue("story-tasks").build());
+        workflow.refill();
+
+        verify(poolActivities, never()).addToPool(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void discardRejectedStories() {
+        when(poolActivities.planRefill()).thenReturn(List.of(new StoryPool.Refill("spiders", "english", 1)));
+        when(storyActivities.generateStory(anyString(), anyString(), anyString()))
+                .thenReturn(new Story("Title", "Story", null));
+        // The cover is still being generated when the story is rejected.
+        when(storyActivities.generateCoverPrompt(any(Story.class), anyString())).thenAnswer(inv ->
+                HeartbeatingCall.run(() -> {
+                    try {
+                        Thread.sleep(Duration.ofMinutes(1));
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException("AI call aborted", e);
+                    }
+                    return "A prompt";
+                }));
+        when(storyActivities.moderateStory(any(Story.class)))
+                .thenReturn(new ModerationVerdict(false, List.of("violence")));
+
+        final var workflow = testEnv.getWorkflowClient().newWorkflowStub(StoryPoolWorkflow.class,
+                WorkflowOptions.newBuilder().setTaskQueue("story-tasks").build());
+        workflow.refill();
+
+        verify(poolActivities, never()).addToPool(anyString(), anyString(), anyString());
+        verify(poolActivities).discardStory(startsWith("pool-"));
+    }
+
+    @Test
+    void keepRefillingWhenAddingFails() {
+        when(poolActivities.planRefill()).thenReturn(List.of(new StoryPool.Refill("spiders", "english", 2)));
+        when(storyActivities.generateStory(anyString(), anyString(), anyString()))
+                .thenReturn(new Story("Title", "Story", null));
+        when(storyActivities.generateCoverPrompt(any(Story.class), anyString()))
+                .thenReturn("A prompt");
+        when(storyActivities.generateCover(anyString()))
+                .thenReturn(new StoryCover("http://foo.bar", 32, 32));
+        final var redisDown = new IllegalStateException("Redis is down");
+        doThrow(redisDown).doThrow(redisDown).doThrow(redisDown).doNothing()
+                .when(poolActivities).addToPool(anyString(), anyString(), anyString());
+
+        final var workflow = testEnv.getWorkflowClient().newWorkflowStub(StoryPoolWorkflow.class,
+                WorkflowOptions.newBuilder().setTaskQueue("story-tasks").build());
+        workflow.refill();
+
+        // The first story is given up after all attempts, the second one still makes it to the pool.
+        verify(poolActivities, times(4)).addToPool(startsWith("pool-"), eq("spiders"), eq("english"));
+    }
+}
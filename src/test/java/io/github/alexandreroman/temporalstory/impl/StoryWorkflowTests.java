@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2026 Alexandre Roman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.alexandreroman.temporalstory.impl;
+
+import io.github.alexandreroman.temporalstory.ModerationVerdict;
+import io.github.alexandreroman.temporalstory.Story;
+import io.github.alexandreroman.temporalstory.StoryActivities;
+import io.github.alexandreroman.temporalstory.StoryCover;
+import io.github.alexandreroman.temporalstory.StoryOutline;
+import io.github.alexandreroman.temporalstory.StoryWorkflow;
+import io.github.alexandreroman.temporalstory.StoryWorkflowState;
+import io.temporal.api.enums.v1.WorkflowIdConflictPolicy;
+import io.temporal.client.UpdateOptions;
+import io.temporal.client.WithStartWorkflowOperation;
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowFailedException;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.client.WorkflowStub;
+import io.temporal.client.WorkflowUpdateStage;
+import io.temporal.failure.CanceledFailure;
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.testing.WorkflowReplayer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class StoryWorkflowTests {
+    private TestWorkflowEnvironment testEnv;
+    private StoryActivities storyActivities;
+
+    @BeforeEach
+    void setUp() {
+        testEnv = TestWorkflowEnvironment.newInstance();
+        storyActivities = mock(StoryActivities.class);
+        // Stories are approved, unless a test says otherwise.
+        when(storyActivities.moderateStory(any(Story.class)))
+                .thenReturn(new ModerationVerdict(true, List.of()));
+        final var worker = testEnv.newWorker("story-tasks");
+        worker.registerWorkflowImplementationTypes(StoryWorkflowImpl.class);
+        worker.registerActivitiesImplementations(storyActivities);
+        testEnv.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        testEnv.close();
+    }
+
+    private StoryWorkflow newWorkflow() {
+        return testEnv.getWorkflowClient().newWorkflowStub(StoryWorkflow.class, WorkflowOptions.newBuilder()
+                .setTaskQueue("story-tasks")
+                .setWorkflowId("story-test")
+                .setWorkflowExecutionTimeout(Duration.ofMinutes(5))
+                .build());
+    }
+
+    @Test
+    void createStory() {
+        when(storyActivities.generateStory(anyString(), anyString(), anyString()))
+                .thenReturn(new Story("Title", "Story", null));
+        when(storyActivities.generateCoverPrompt(any(Story.class), anyString()))
+                .thenReturn("A prompt");
+        when(storyActivities.generateCover(anyString()))
+                .thenReturn(new StoryCover("http://foo.bar", 32, 32));
+
+        final var workflow = newWorkflow();
+        final var story = workflow.createStory(new StoryWorkflow.StoryParams("Alex", "PHP", "French"));
+        assertThat(story).isEqualTo(new Story("Title", "Story", new StoryCover("http://foo.bar", 32, 32)));
+        assertThat(workflow.getState()).isEqualTo(StoryWorkflowState.COMPLETED);
+        verify(storyActivities).saveEditions(Map.of("French", story));
+        verify(storyActivities).saveStory(story);
+    }
+
+    @Test
+    void createStoryWithTranslations() {
+        when(storyActivities.generateStory(anyString(), anyString(), anyString()))
+                .thenReturn(new Story("Titre", "Histoire", null));
+        when(storyActivities.translateStory(any(Story.class), eq("French"), eq("English")))
+                .thenReturn(new Story("Title", "Story", null));
+        when(storyActivities.translateStory(any(Story.class), eq("French"), eq("Klingon")))
+                .thenThrow(new IllegalArgumentException("Unknown language"));
+        when(storyActivities.generateCoverPrompt(any(Story.class), anyString()))
+                .thenReturn("A prompt");
+        when(storyActivities.generateCover(anyString()))
+                .thenReturn(new StoryCover("http://foo.bar", 32, 32));
+
+        final var workflow = newWorkflow();
+        final var story = workflow.createStory(new StoryWorkflow.StoryParams("Alex", "PHP", "French",
+                List.of("English", "Klingon")));
+        assertThat(workflow.getState()).isEqualTo(StoryWorkflowState.COMPLETED);
+
+        // A single cover is generated, and shared by all editions.
+        verify(storyActivities, times(1)).generateCover(anyString());
+        final var cover = new StoryCover("http://foo.bar", 32, 32);
+        assertThat(story).isEqualTo(new Story("Titre", "Histoire", cover));
+        // Failed translations are left out.
+        verify(storyActivities).saveEditions(Map.of(
+                "French", story,
+                "English", new Story("Title", "Story", cover)));
+        verify(storyActivities).saveStory(story);
+    }
+
+    @Test
+    void replaySequentialStory() throws Exception {
+        // Workflows started before steps ran in parallel still replay their history.
+        WorkflowReplayer.replayWorkflowExecutionFromResource("histories/story-workflow-sequential.json",
+                StoryWorkflowImpl.class);
+    }
+
+    @Test
+    void createLongStory() {
+        final var outline = new StoryOutline("Title", List.of(
+                new StoryOutline.Chapter("One", "First"),
+                new StoryOutline.Chapter("Two", "Second"),
+                new StoryOutline.Chapter("Three", "Third")));
+        when(storyActivities.generateOutline("Alex", "PHP", "French", 3)).thenReturn(outline);
+        final var chaptersStarted = new CountDownLatch(3);
+        when(storyActivities.generateChapter(any(StoryOutline.class), anyInt(), anyString(), anyString())).thenAnswer(inv -> {
+            // Chapters are only written if all of them are written at the same time.
+            chaptersStarted.countDown();
+            if (!chaptersStarted.await(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Chapters are not written in parallel");
+            }
+            return "Chapter " + inv.getArgument(1);
+        });
+        when(storyActivities.generateCoverPrompt(any(Story.class), anyString()))
+                .thenReturn("A prompt");
+        when(storyActivities.generateCover(anyString()))
+                .thenReturn(new StoryCover("http://foo.bar", 32, 32));
+
+        final var workflow = newWorkflow();
+        final var story = workflow.createStory(new StoryWorkflow.StoryParams("Alex", "PHP", "French", List.of(), 3));
+        assertThat(story).isEqualTo(new Story("Title",
+                "One\n\nChapter 0\n\nTwo\n\nChapter 1\n\nThree\n\nChapter 2",
+                new StoryCover("http://foo.bar", 32, 32)));
+        verify(storyActivities, never()).generateStory(anyString(), anyString(), anyString());
+
+        // Chapters are saved in order, before the complete story.
+        final var inOrder = inOrder(storyActivities);
+        inOrder.verify(storyActivities).saveChapter("Title", 0, "One\n\nChapter 0");
+        inOrder.verify(storyActivities).saveChapter("Title", 1, "Two\n\nChapter 1");
+        inOrder.verify(storyActivities).saveChapter("Title", 2, "Three\n\nChapter 2");
+        inOrder.verify(storyActivities).saveStory(story);
+    }
+
+    @Test
+    void translateLongStory() {
+        final var outline = new StoryOutline("Titre", List.of(
+                new StoryOutline.Chapter("Un", "Premier"),
+                new StoryOutline.Chapter("Deux", "Second")));
+        when(storyActivities.generateOutline("Alex", "PHP", "French", 2)).thenReturn(outline);
+        when(storyActivities.generateChapter(any(StoryOutline.class), anyInt(), anyString(), anyString()))
+                .thenAnswer(inv -> "Chapitre " + inv.getArgument(1));
+        when(storyActivities.translateStory(any(Story.class), eq("French"), eq("English"))).thenAnswer(inv -> {
+            final Story chapter = inv.getArgument(0);
+            return new Story("Title", chapter.content().replace("Chapitre", "Chapter")
+                    .replace("Un", "One").replace("Deux", "Two"), null);
+        });
+        when(storyActivities.generateCoverPrompt(any(Story.class), anyString()))
+                .thenReturn("A prompt");
+        when(storyActivities.generateCover(anyString()))
+                .thenReturn(new StoryCover("http://foo.bar", 32, 32));
+
+        final var workflow = newWorkflow();
+        final var story = workflow.createStory(new StoryWorkflow.StoryParams("Alex", "PHP", "French",
+                List.of("English"), 2));
+
+        // Each chapter is translated on its own, along with the story title.
+        verify(storyActivities).translateStory(new Story("Titre", "Un\n\nChapitre 0", null), "French", "English");
+        verify(storyActivities).translateStory(new Story("Titre", "Deux\n\nChapitre 1", null), "French", "English");
+        verify(storyActivities).saveEditions(Map.of(
+                "French", story,
+                "English", new Story("Title", "One\n\nChapter 0\n\nTwo\n\nChapter 1", story.cover())));
+    }
+
+    @Test
+    void rejectLongStory() {
+        final var outline = new StoryOutline("Title", List.of(
+                new StoryOutline.Chapter("One", "First"),
+                new StoryOutline.Chapter("Two", "Second")));
+        when(storyActivities.generateOutline("Alex", "PHP", "French", 2)).thenReturn(outline);
+        when(storyActivities.generateChapter(any(StoryOutline.class), anyInt(), anyString(), anyString()))
+                .thenAnswer(inv -> "Chapter " + inv.getArgument(1));
+        final var verdict = new ModerationVerdict(false, List.of("violence"));
+        when(storyActivities.moderateStory(any(Story.class))).thenReturn(verdict);
+
+        final var workflow = newWorkflow();
+        workflow.createStory(new StoryWorkflow.StoryParams("Alex", "PHP", "French", List.of("English"), 2));
+        assertThat(workflow.getState()).isEqualTo(StoryWorkflowState.REJECTED);
+        verify(storyActivities).saveModeration(verdict);
+        // The story was rejected while it was written: it is neither translated nor illustrated.
+        assertThat(workflow.getProgress().transitions()).extracting(StoryWorkflow.Transition::state)
+                .containsExactly(StoryWorkflowState.INITIALIZING, StoryWorkflowState.GENERATING_OUTLINE,
+                        StoryWorkflowState.GENERATING_CHAPTERS, StoryWorkflowState.REJECTED);
+        verify(storyActivities, never()).translateStory(any(Story.class), anyString(), anyString());
+        verify(storyActivities, never()).generateCoverPrompt(any(Story.class), anyString());
+        verify(storyActivities, never()).saveChapter(anyString(), anyInt(), anyString());
+    }
+
+    @Test
+    void waitForText() throws InterruptedException {
+        when(storyActivities.generateStory(anyString(), anyString(), anyString()))
+                .thenReturn(new Story("Title", "Story", null));
+        when(storyActivities.generateCoverPrompt(any(Story.class), anyString()))
+                .thenReturn("A prompt");
+        final var textReceived = new CountDownLatch(1);
+        when(storyActivities.generateCover(anyString())).thenAnswer(inv -> {
+            // The cover is only generated once the caller got the text.
+            if (!textReceived.await(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Text not received before the cover");
+            }
+            return new StoryCover("http://foo.bar", 32, 32);
+        });
+
+        final var workflow = testEnv.getWorkflowClient().newWorkflowStub(StoryWorkflow.class, WorkflowOptions.newBuilder()
+                .setTaskQueue("story-tasks")
+                .setWorkflowId("story-test")
+                .setWorkflowIdConflictPolicy(WorkflowIdConflictPolicy.WORKFLOW_ID_CONFLICT_POLICY_FAIL)
+                .build());
+        final var result = WorkflowClient.executeUpdateWithStart(workflow::waitForStage, StoryWorkflow.Stage.TEXT,
+                UpdateOptions.<StoryWorkflow.StageResult>newBuilder().setWaitForStage(WorkflowUpdateStage.COMPLETED).build(),
+                new WithStartWorkflowOperation<>(workflow::createStory, new StoryWorkflow.StoryParams("Alex", "PHP", "French")));
+        assertThat(result.story()).isEqualTo(new Story("Title", "Story", null));
+        textReceived.countDown();
+
+        // Callers waiting for the complete story get it along with the cover.
+        assertThat(workflow.waitForStage(StoryWorkflow.Stage.COMPLETED))
+                .isEqualTo(new StoryWorkflow.StageResult(StoryWorkflowState.COMPLETED,
+                        new Story("Title", "Story", new StoryCover("http://foo.bar", 32, 32))));
+        assertThat(WorkflowStub.fromTyped(workflow).getResult(Story.class).cover()).isNotNull();
+    }
+
+    @Test
+    void rejectStory() throws InterruptedException {
+        when(storyActivities.generateStory(anyString(), anyString(), anyString()))
+                .thenReturn(new Story("Title", "Story", null));
+        final var coverStarted = new CountDownLatch(1);
+        final var coverCancelled = new CountDownLatch(1);
+        when(storyActivities.generateCoverPrompt(any(Story.class), anyString())).thenAnswer(inv -> {
+            coverStarted.countDown();
+            return HeartbeatingCall.run(() -> {
+                try {
+                    Thread.sleep(Duration.ofMinutes(1));
+                } catch (InterruptedException e) {
+                    coverCancelled.countDown();
+                    throw new IllegalStateException("AI call aborted", e);
+                }
+                return "A prompt";
+            });
+        });
+        final var verdict = new ModerationVerdict(false, List.of("violence"));
+        when(storyActivities.moderateStory(any(Story.class))).thenAnswer(inv -> {
+            // The story is only rejected if the cover is generated at the same time.
+            if (!coverStarted.await(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Moderation does not run in parallel with the cover");
+            }
+            return verdict;
+        });
+
+        final var workflow = newWorkflow();
+        workflow.createStory(new StoryWorkflow.StoryParams("Alex", "PHP", "French"));
+        assertThat(workflow.getState()).isEqualTo(StoryWorkflowState.REJECTED);
+        assertThat(coverCancelled.await(10, TimeUnit.SECONDS)).isTrue();
+        verify(storyActivities).saveModeration(verdict);
+        verify(storyActivities, never()).generateCover(anyString());
+        verify(storyActivities, never()).saveStory(any(Story.class));
+    }
+
+    @Test
+    void cancelStory() throws InterruptedException {
+        final var storyStarted = new CountDownLatch(1);
+        when(storyActivities.generateStory(anyString(), anyString(), anyString())).thenAnswer(inv -> {
+            storyStarted.countDown();
+            // Simulate a slow AI model call.
+            return HeartbeatingCall.run(() -> {
+                try {
+                    Thread.sleep(Duration.ofMinutes(1));
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException("AI call aborted", e);
+                }
+                return new Story("Title", "Story", null);
+            });
+        });
+
+        final var workflow = newWorkflow();
+        WorkflowClient.start(workflow::createStory, new StoryWorkflow.StoryParams("Alex", "PHP", "French"));
+        storyStarted.await();
+        WorkflowStub.fromTyped(workflow).cancel();
+
+        assertThatThrownBy(() -> WorkflowStub.fromTyped(workflow).getResult(Story.class))
+                .isInstanceOf(WorkflowFailedException.class)
+                .hasCauseInstanceOf(CanceledFailure.class);
+        assertThat(workflow.getState()).isEqualTo(StoryWorkflowState.CANCELLED);
+        verify(storyActivities, never()).generateCover(anyString());
+    }
+}